@@ -38,6 +38,7 @@ import java.util.Set;
 public class AmfArray implements AmfValue {
 	private Map<String, AmfValue> associative;
 	private List<AmfValue> dense;
+	private Runnable loader;
 
 	/**
 	 * Constructs a new AmfArray.
@@ -47,6 +48,38 @@ public class AmfArray implements AmfValue {
 		associative = new LinkedHashMap<String, AmfValue>();
 	}
 
+	/**
+	 * Runs the loader if one has been set, which fills in the contents of this
+	 * array the first time they are used. If they cannot be read the loader throws
+	 * an IllegalStateException, and it is not run again.
+	 */
+	private void load() {
+		if(loader != null) {
+			Runnable run = loader;
+			loader = null;
+			run.run();
+		}
+	}
+
+	/**
+	 * Gets the loader that has yet to fill in the contents of this array, or null
+	 * if they have been filled in.
+	 */
+	Runnable getLoader() {
+		return loader;
+	}
+
+	/**
+	 * Sets the loader used to fill in the contents of this array when they are
+	 * first used. This is used to defer reading the array until it is needed.
+	 * 
+	 * @param loader
+	 *            the loader, or null if there is nothing to load.
+	 */
+	void setLoader(Runnable loader) {
+		this.loader = loader;
+	}
+
 	/**
 	 * Adds the given value to the dense portion of this array.
 	 * 
@@ -54,6 +87,7 @@ public class AmfArray implements AmfValue {
 	 *            Value.
 	 */
 	public void add(AmfValue value) {
+		load();
 		dense.add(value);
 	}
 
@@ -62,6 +96,7 @@ public class AmfArray implements AmfValue {
 	 * AmfArray.
 	 */
 	public void clear() {
+		load();
 		dense.clear();
 		associative.clear();
 	}
@@ -70,6 +105,8 @@ public class AmfArray implements AmfValue {
 	public boolean equals(AmfValue value) {
 		if(value instanceof AmfArray) {
 			AmfArray arr = (AmfArray) value;
+			load();
+			arr.load();
 			if(arr.dense.size() == dense.size() && arr.associative.size() == associative.size()) {
 				return arr.dense.equals(dense) && arr.associative.equals(associative);
 			}
@@ -102,6 +139,7 @@ public class AmfArray implements AmfValue {
 	 *             {@link #getDenseSize()}.
 	 */
 	public AmfValue get(int index) {
+		load();
 		return dense.get(index);
 	}
 
@@ -115,6 +153,7 @@ public class AmfArray implements AmfValue {
 	 *         associative part contains no mapping for the key
 	 */
 	public AmfValue get(String key) {
+		load();
 		return associative.get(key);
 	}
 
@@ -124,6 +163,7 @@ public class AmfArray implements AmfValue {
 	 * @return The map backing associative part.
 	 */
 	public Map<String, AmfValue> getAssociative() {
+		load();
 		return associative;
 	}
 
@@ -133,6 +173,7 @@ public class AmfArray implements AmfValue {
 	 * @return the associative size
 	 */
 	public int getAssociativeSize() {
+		load();
 		return associative.size();
 	}
 
@@ -142,6 +183,7 @@ public class AmfArray implements AmfValue {
 	 * @return The list backing the dense part.
 	 */
 	public List<AmfValue> getDense() {
+		load();
 		return dense;
 	}
 
@@ -151,6 +193,7 @@ public class AmfArray implements AmfValue {
 	 * @return The dense size.
 	 */
 	public int getDenseSize() {
+		load();
 		return dense.size();
 	}
 
@@ -159,6 +202,17 @@ public class AmfArray implements AmfValue {
 		return AmfType.Array;
 	}
 
+	/**
+	 * Hashes the identity of this array. ActionScript dictionaries key arrays by
+	 * identity, so equal arrays must stay apart as keys of an
+	 * {@link AmfDictionary}. Use {@link AmfUtils#deepHashCode(AmfValue)} to hash
+	 * the values.
+	 */
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
 	/**
 	 * Returns the set of keys associated with the associative part of this
 	 * AmfArray.
@@ -166,6 +220,7 @@ public class AmfArray implements AmfValue {
 	 * @return The associative keys.
 	 */
 	public Set<String> keySet() {
+		load();
 		return associative.keySet();
 	}
 
@@ -184,6 +239,7 @@ public class AmfArray implements AmfValue {
 	 *         mapping for the key.
 	 */
 	public AmfValue put(String key, AmfValue value) {
+		load();
 		return associative.put(key, value);
 	}
 
@@ -199,6 +255,7 @@ public class AmfArray implements AmfValue {
 	 *             {@link #getDenseSize()}.
 	 */
 	public AmfValue remove(int index) {
+		load();
 		return dense.remove(index);
 	}
 
@@ -214,6 +271,7 @@ public class AmfArray implements AmfValue {
 	 *         mapping for key.
 	 */
 	public AmfValue remove(String key) {
+		load();
 		return associative.remove(key);
 	}
 
@@ -224,11 +282,13 @@ public class AmfArray implements AmfValue {
 	 * @return Size of this AmfArray
 	 */
 	public int size() {
+		load();
 		return dense.size() + associative.size();
 	}
 	
 	@Override
 	public String toString() {
+		load();
 		StringBuilder buf = new StringBuilder();
 		buf.append("Array{");
 		boolean first = true;
@@ -28,6 +28,29 @@ package org.csdgn.amf3;
  * @author Robert Maupin
  */
 public class AmfBoolean extends AmfPrimitive<Boolean> {
+	private static final AmfBoolean sharedFalse = new AmfBoolean(false);
+	private static final AmfBoolean sharedTrue = new AmfBoolean(true);
+
+	static {
+		sharedFalse.share();
+		sharedTrue.share();
+	}
+
+	/**
+	 * Gets the shared AmfBoolean with the specified value. A shared AmfBoolean
+	 * cannot be changed.
+	 * 
+	 * @param value
+	 *            The value.
+	 * @return The shared AmfBoolean with the value.
+	 * @see #isShared()
+	 */
+	public static AmfBoolean shared(boolean value) {
+		if(value) {
+			return sharedTrue;
+		}
+		return sharedFalse;
+	}
 
 	/**
 	 * Constructs this AmfBoolean with the default value of false.
@@ -21,6 +21,7 @@
  */
 package org.csdgn.amf3;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -34,6 +35,7 @@ import java.util.Arrays;
 public class AmfByteArray implements AmfValue {
 	private byte[] data;
 	private int size;
+	private ByteBuffer view;
 
 	/**
 	 * Constructs a new byte array.
@@ -43,12 +45,37 @@ public class AmfByteArray implements AmfValue {
 		size = 0;
 	}
 
+	/**
+	 * Constructs a byte array that is a view of the remaining data in the given
+	 * buffer. The data is only copied once this byte array is changed or its
+	 * backing array is needed, and must not change until then.
+	 * 
+	 * @param view
+	 *            The buffer to view.
+	 */
+	AmfByteArray(ByteBuffer view) {
+		this.view = view;
+		this.size = view.remaining();
+	}
+
+	/**
+	 * Copies the data of the view, if there is one, into the backing array.
+	 */
+	private void load() {
+		if(view != null) {
+			data = new byte[size + 8];
+			view.duplicate().get(data, 0, size);
+			view = null;
+		}
+	}
+
 	/**
 	 * Returns the current capacity of this AmfByteArray.
 	 * 
 	 * @return The capacity.
 	 */
 	public int capacity() {
+		load();
 		return data.length;
 	}
 
@@ -56,6 +83,7 @@ public class AmfByteArray implements AmfValue {
 	 * Resets the size of this byte array and clears data.
 	 */
 	public void clear() {
+		load();
 		size = 0;
 	}
 	
@@ -81,11 +109,28 @@ public class AmfByteArray implements AmfValue {
 		return false;
 	}
 
+	@Override
+	public int hashCode() {
+		int hash = getType().id;
+		if(view != null) {
+			int start = view.position();
+			for(int i = 0; i < size; ++i) {
+				hash = 31 * hash + view.get(start + i);
+			}
+			return hash;
+		}
+		for(int i = 0; i < size; ++i) {
+			hash = 31 * hash + data[i];
+		}
+		return hash;
+	}
+
 	/**
 	 * Gets the internal data array of this byte array.
 	 * @return the backing data byte array
 	 */
 	protected byte[] getBackingArray() {
+		load();
 		return data;
 	}
 
@@ -112,6 +157,7 @@ public class AmfByteArray implements AmfValue {
 	 * @return The byte popped from the array.
 	 */
 	public byte pop() {
+		load();
 		if(size == 0) {
 			throw new IndexOutOfBoundsException("Cannot pop values from an empty array.");
 		}
@@ -138,6 +184,7 @@ public class AmfByteArray implements AmfValue {
 	 * @return The bytes popped from the array.
 	 */
 	public byte[] pop(int count) {
+		load();
 		if(size < count) {
 			throw new IndexOutOfBoundsException("Cannot pop more values from an array then are available.");
 		}
@@ -170,6 +217,7 @@ public class AmfByteArray implements AmfValue {
 	 *            The number of bytes to pop.
 	 */
 	public void popTo(byte[] b, int offset, int length) {
+		load();
 		if(size < length) {
 			throw new IndexOutOfBoundsException("Cannot pop more values from an array then are available.");
 		}
@@ -184,6 +232,7 @@ public class AmfByteArray implements AmfValue {
 	 *            The byte to append.
 	 */
 	public void push(byte b) {
+		load();
 		data[size++] = b;
 
 		if(size == data.length) {
@@ -199,6 +248,7 @@ public class AmfByteArray implements AmfValue {
 	 *            The bytes to append.
 	 */
 	public void push(byte[] b) {
+		load();
 		if(size + b.length >= data.length) {
 			int nCap = (size + b.length) << 1;
 			data = Arrays.copyOf(data, nCap);
@@ -230,6 +280,7 @@ public class AmfByteArray implements AmfValue {
 		if(offset + length > b.length) {
 			throw new IndexOutOfBoundsException("Offset and length exceeds the size of the source array.");
 		}
+		load();
 		if(size + length >= data.length) {
 			int nCap = (size + length) << 1;
 			data = Arrays.copyOf(data, nCap);
@@ -253,6 +304,11 @@ public class AmfByteArray implements AmfValue {
 	 * @return The byte array.
 	 */
 	public byte[] toArray() {
+		if(view != null) {
+			byte[] array = new byte[size];
+			view.duplicate().get(array);
+			return array;
+		}
 		return Arrays.copyOf(data, size);
 	}
 	
@@ -260,6 +316,7 @@ public class AmfByteArray implements AmfValue {
 	public String toString() {
 		StringBuilder buf = new StringBuilder();
 		buf.append("ByteArray{");
+		byte[] data = toArray();
 		for(int i = 0; i < size; ++i) {
 			if(i != 0) {
 				buf.append(",");
@@ -26,9 +26,10 @@ import java.util.LinkedHashMap;
 /**
  * <p>
  * Associated with the AMF dictionary type. A dictionary is a map of key-value
- * pairs, where both the key and value can be any AmfValue. Keys are matched
- * based on identity using a strict-equality comparison by means of
- * {@link #equals(AmfValue)}.
+ * pairs, where both the key and value can be any AmfValue. As in ActionScript,
+ * strings, numbers and other simple keys are matched by value, while objects,
+ * arrays, dictionaries and vectors are matched by identity, as they hash by
+ * identity.
  * </p>
  * 
  * <p>
@@ -101,6 +102,17 @@ public class AmfDictionary extends LinkedHashMap<AmfValue, AmfValue> implements
 		return AmfType.Dictionary;
 	}
 
+	/**
+	 * Hashes the identity of this dictionary. ActionScript dictionaries key
+	 * dictionaries by identity, so equal dictionaries must stay apart as keys of
+	 * another. Use {@link AmfUtils#deepHashCode(AmfValue)} to hash the keys and
+	 * values.
+	 */
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
 	/**
 	 * Returns if this dictionary will be stored as having weak keys.
 	 * 
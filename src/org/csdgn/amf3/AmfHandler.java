@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.amf3;
+
+/**
+ * <p>
+ * Receives the contents of an AMF stream as a series of events, instead of as a
+ * tree of AmfValues. This allows a stream to be read without keeping any of its
+ * values in memory.
+ * </p>
+ * 
+ * <p>
+ * Containers are reported as a start event, followed by the events of their
+ * contents, followed by an end event. The values of objects and the associative
+ * part of arrays are preceded by a {@link #property(String)} event. Dictionary
+ * contents are reported as alternating key and value events. Containers that
+ * were already read are reported with {@link #reference(AmfType, int)} instead
+ * of being read again.
+ * </p>
+ * 
+ * @author Robert Maupin
+ * @see AmfIO#scan(java.io.InputStream, AmfHandler, ExternalizableFactory...)
+ * @see AmfIO#scanFile(java.io.InputStream, AmfHandler, ExternalizableFactory...)
+ */
+public interface AmfHandler {
+	/**
+	 * Called for every value of a double vector, in place of
+	 * {@link #value(AmfValue)}, so that the value is not boxed.
+	 * 
+	 * @param value
+	 *            the value
+	 */
+	public void doubleValue(double value);
+
+	/**
+	 * Called at the end of an array.
+	 */
+	public void endArray();
+
+	/**
+	 * Called at the end of a dictionary.
+	 */
+	public void endDictionary();
+
+	/**
+	 * Called after the value of an entry has been read.
+	 * 
+	 * @return true to continue reading, false to stop reading the stream.
+	 */
+	public boolean endEntry();
+
+	/**
+	 * Called at the end of an object.
+	 */
+	public void endObject();
+
+	/**
+	 * Called at the end of a vector.
+	 */
+	public void endVector();
+
+	/**
+	 * Called for every value of an integer vector, in place of
+	 * {@link #value(AmfValue)}, so that the value is not boxed.
+	 * 
+	 * @param value
+	 *            the value
+	 */
+	public void intValue(int value);
+
+	/**
+	 * Called before the value associated with the given key in an object or in
+	 * the associative part of an array.
+	 * 
+	 * @param key
+	 *            the property name
+	 */
+	public void property(String key);
+
+	/**
+	 * Called in place of a container that was already read earlier in the
+	 * stream.
+	 * 
+	 * @param type
+	 *            the type of the container
+	 * @param index
+	 *            the index of the container in the reference table
+	 */
+	public void reference(AmfType type, int index);
+
+	/**
+	 * Called at the start of an array. The associative part is reported first,
+	 * followed by the dense part.
+	 * 
+	 * @param denseSize
+	 *            the size of the dense part of the array
+	 */
+	public void startArray(int denseSize);
+
+	/**
+	 * Called at the start of a dictionary.
+	 * 
+	 * @param size
+	 *            the number of key-value pairs in the dictionary
+	 * @param weakKeys
+	 *            if the dictionary has weak keys
+	 */
+	public void startDictionary(int size, boolean weakKeys);
+
+	/**
+	 * Called at the start of each entry in the stream. A file has one entry for
+	 * each of its keys, a serialized value has a single entry.
+	 * 
+	 * @param key
+	 *            the key of the entry, or null if the stream is not a file
+	 * @return true to report the value of this entry, false to skip over it.
+	 */
+	public boolean startEntry(String key);
+
+	/**
+	 * Called at the start of an object. The sealed properties are reported
+	 * first, followed by the dynamic properties.
+	 * 
+	 * @param traitName
+	 *            the name of the objects trait
+	 * @param isDynamic
+	 *            if the object is dynamic
+	 * @param isExternalizable
+	 *            if the object is externalizable
+	 */
+	public void startObject(String traitName, boolean isDynamic, boolean isExternalizable);
+
+	/**
+	 * Called at the start of a vector.
+	 * 
+	 * @param type
+	 *            the vector type
+	 * @param size
+	 *            the number of values in the vector
+	 * @param fixedLength
+	 *            if the vector has a fixed length
+	 */
+	public void startVector(AmfType type, int size, boolean fixedLength);
+
+	/**
+	 * Called for every value of an unsigned integer vector, in place of
+	 * {@link #value(AmfValue)}, so that the value is not boxed.
+	 * 
+	 * @param value
+	 *            the value, from 0 to 2^32 - 1
+	 */
+	public void unsignedIntValue(long value);
+
+	/**
+	 * Called for every value that is not a container. This includes strings,
+	 * numbers, booleans, null, undefined, dates, byte arrays and xml. The values
+	 * of integer, unsigned integer and double vectors are reported with
+	 * {@link #intValue(int)}, {@link #unsignedIntValue(long)} and
+	 * {@link #doubleValue(double)} instead.
+	 * 
+	 * @param value
+	 *            the value
+	 */
+	public void value(AmfValue value);
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.amf3;
+
+/**
+ * An {@link AmfHandler} that ignores every event and reads the entire stream.
+ * Extend this to handle only the events of interest. The values of numeric
+ * vectors are passed on to {@link #value(AmfValue)} as new AmfIntegers and
+ * AmfDoubles, unless their own methods are overridden.
+ * 
+ * @author Robert Maupin
+ */
+public class AmfHandlerAdapter implements AmfHandler {
+	@Override
+	public void doubleValue(double value) {
+		value(new AmfDouble(value));
+	}
+
+	@Override
+	public void endArray() {
+	}
+
+	@Override
+	public void endDictionary() {
+	}
+
+	@Override
+	public boolean endEntry() {
+		return true;
+	}
+
+	@Override
+	public void endObject() {
+	}
+
+	@Override
+	public void endVector() {
+	}
+
+	@Override
+	public void intValue(int value) {
+		value(new AmfInteger(value));
+	}
+
+	@Override
+	public void property(String key) {
+	}
+
+	@Override
+	public void reference(AmfType type, int index) {
+	}
+
+	@Override
+	public void startArray(int denseSize) {
+	}
+
+	@Override
+	public void startDictionary(int size, boolean weakKeys) {
+	}
+
+	@Override
+	public boolean startEntry(String key) {
+		return true;
+	}
+
+	@Override
+	public void startObject(String traitName, boolean isDynamic, boolean isExternalizable) {
+	}
+
+	@Override
+	public void startVector(AmfType type, int size, boolean fixedLength) {
+	}
+
+	@Override
+	public void unsignedIntValue(long value) {
+		AmfInteger integer = new AmfInteger();
+		integer.setUnsignedValue(value);
+		value(integer);
+	}
+
+	@Override
+	public void value(AmfValue value) {
+	}
+}
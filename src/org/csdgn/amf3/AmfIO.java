@@ -22,11 +22,12 @@
 package org.csdgn.amf3;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -34,11 +35,23 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * This is an IO class to handle reading and writing from .SOL files and
@@ -75,14 +88,27 @@ public class AmfIO {
 	 * @author Robert Maupin
 	 */
 	private static class AmfInput implements Closeable, AutoCloseable {
+		private BufferInput buffer;
 		private List<ExternalizableFactory> factories;
 		private boolean file;
 		private boolean headerRead;
-		private DataInputStream in;
+		private DataInput in;
+		private boolean lazy;
 		private String name;
+		private PendingStrings pendingStrings;
+		private StringPool pool;
+		private byte[] poolBuffer;
+		private Set<AmfValue> referenced;
 		private List<AmfValue> referenceTable;
+		private boolean shared;
+		private List<Skipped> skipped;
+		private SpanTable spans;
+		private int stringCount;
+		private DataInputStream stream;
 		private List<String> stringTable;
+		private int traitCount;
 		private List<Trait> traitTable;
+		private boolean views;
 
 		/**
 		 * Creates an AmfInputStream with the given InputStream as input.
@@ -96,7 +122,8 @@ public class AmfIO {
 			if (!(in instanceof BufferedInputStream)) {
 				in = new BufferedInputStream(in);
 			}
-			this.in = new DataInputStream(in);
+			this.stream = new DataInputStream(in);
+			this.in = this.stream;
 			this.stringTable = new ArrayList<String>();
 			this.referenceTable = new ArrayList<AmfValue>();
 			this.traitTable = new ArrayList<Trait>();
@@ -106,11 +133,81 @@ public class AmfIO {
 			this.file = file;
 		}
 
-		private AmfXml _readXml(boolean isDocument) throws IOException {
+		/**
+		 * Creates an AmfInputStream that reads from the remaining data in the given
+		 * buffer, without changing its position. If lazy, the contents of objects and
+		 * arrays are only read when they are first used, and strings and byte arrays
+		 * are views of the buffer that are only decoded or copied when needed.
+		 * 
+		 * @param buffer
+		 *            the buffer to read from.
+		 * @param file
+		 *            if the data is in the SOL file format.
+		 * @param lazy
+		 *            if objects and arrays should be read lazily.
+		 */
+		protected AmfInput(ByteBuffer buffer, boolean file, boolean lazy) {
+			this.buffer = new BufferInput(buffer.slice());
+			this.in = this.buffer;
+			this.stringTable = new ArrayList<String>();
+			this.referenceTable = new ArrayList<AmfValue>();
+			this.traitTable = new ArrayList<Trait>();
+			this.factories = new ArrayList<ExternalizableFactory>();
+			this.spans = new SpanTable();
+			this.pendingStrings = new PendingStrings();
+			if (lazy) {
+				this.referenced = Collections.newSetFromMap(new IdentityHashMap<AmfValue, Boolean>());
+			}
+			this.headerRead = false;
+			this.name = null;
+			this.file = file;
+			this.lazy = lazy;
+			this.views = lazy;
+		}
+
+		/**
+		 * Creates an AmfInputStream that continues reading from the given position
+		 * in the data of a lazy input, sharing its tables. This is used to load a
+		 * deferred value, and the string and trait counts are those at the position.
+		 */
+		private AmfInput(AmfInput source, int position, int stringCount, int traitCount) {
+			this(source, position, stringCount, traitCount, source.referenceTable, true);
+		}
+
+		/**
+		 * Creates an AmfInputStream that continues reading from the given position
+		 * in the data of another input, sharing its string and trait tables but using
+		 * the given reference table.
+		 */
+		private AmfInput(AmfInput source, int position, int stringCount, int traitCount,
+				List<AmfValue> referenceTable, boolean lazy) {
+			this.buffer = source.buffer.duplicate();
+			this.buffer.seek(position);
+			this.in = this.buffer;
+			this.stringTable = source.stringTable;
+			this.referenceTable = referenceTable;
+			this.traitTable = source.traitTable;
+			this.factories = source.factories;
+			this.spans = source.spans;
+			this.pendingStrings = source.pendingStrings;
+			this.referenced = source.referenced;
+			this.skipped = source.skipped;
+			this.stringCount = stringCount;
+			this.traitCount = traitCount;
+			this.headerRead = true;
+			this.name = source.name;
+			this.file = source.file;
+			this.lazy = lazy;
+			this.pool = source.pool;
+			this.shared = source.shared;
+			this.views = source.views;
+		}
+
+		private AmfXml _readXml(boolean isDocument) throws IOException, UnexpectedDataException {
 			// Stored by ref?
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfXml) referenceTable.get(h.countIndexLength);
+				return (AmfXml) getReference(h.countIndexLength);
 			}
 
 			// Stored by value
@@ -137,7 +234,9 @@ public class AmfIO {
 
 		@Override
 		public void close() throws IOException {
-			in.close();
+			if (stream != null) {
+				stream.close();
+			}
 		}
 
 		/**
@@ -171,13 +270,16 @@ public class AmfIO {
 			if (file && !headerRead) {
 				readFileHeader();
 			}
+			if (buffer != null) {
+				return buffer.remaining() > 0;
+			}
 			// using the absolute simplest method at the moment.
 			// this is basically only a isEOF check.
-			in.mark(8);
-			if (in.read() == -1) {
+			stream.mark(8);
+			if (stream.read() == -1) {
 				return false;
 			}
-			in.reset();
+			stream.reset();
 			return true;
 		}
 
@@ -192,6 +294,24 @@ public class AmfIO {
 		 *             the stream data was not in an expected format.
 		 */
 		protected AmfEntry next() throws IOException, UnexpectedDataException {
+			return next(null);
+		}
+
+		/**
+		 * Returns the next entry in the input stream, only reading its value if the
+		 * key is one of the given keys. Otherwise the value is skipped over and the
+		 * entry has a null value.
+		 * 
+		 * @param keys
+		 *            the keys to read the values of, or null to read every value.
+		 * @return the next entry, or null of the end of the stream has been reached.
+		 * @throws IOException
+		 *             the stream has been closed and the contained input stream does
+		 *             not support reading after close, or another I/O error occurs.
+		 * @throws UnexpectedDataException
+		 *             the stream data was not in an expected format.
+		 */
+		protected AmfEntry next(Set<String> keys) throws IOException, UnexpectedDataException {
 			if (file && !headerRead) {
 				readFileHeader();
 			}
@@ -202,7 +322,23 @@ public class AmfIO {
 			} else {
 				key = null;
 			}
-			final AmfValue value = readValue();
+			final AmfValue value;
+			if (keys == null || keys.contains(key)) {
+				value = readValue();
+			} else {
+				value = null;
+				int base = referenceTable.size();
+				int position = buffer != null ? buffer.position() : -1;
+				int strings = stringCount;
+				int traits = traitCount;
+				skipValue();
+				if (position != -1 && referenceTable.size() > base) {
+					if (skipped == null) {
+						skipped = new ArrayList<Skipped>();
+					}
+					skipped.add(new Skipped(position, strings, traits, base, referenceTable.size()));
+				}
+			}
 
 			if (file) {
 				// trailer, skip byte
@@ -222,11 +358,106 @@ public class AmfIO {
 			};
 		}
 
+		/**
+		 * Clears the tables and state of this input, keeping their capacity, and
+		 * starts reading the remaining data of the given buffer. The factories are
+		 * kept.
+		 * 
+		 * @param buffer
+		 *            the buffer to read from.
+		 * @param file
+		 *            if the data is in the SOL file format.
+		 */
+		protected void reset(ByteBuffer buffer, boolean file) {
+			this.buffer = new BufferInput(buffer.slice());
+			this.in = this.buffer;
+			this.stream = null;
+			this.stringTable.clear();
+			this.referenceTable.clear();
+			this.traitTable.clear();
+			this.spans.clear();
+			this.stringCount = 0;
+			this.traitCount = 0;
+			this.headerRead = false;
+			this.name = null;
+			this.file = file;
+		}
+
+		/**
+		 * Sets if the undefined, null, boolean and small integer values read should
+		 * be shared instances, instead of new ones.
+		 * 
+		 * @param shared
+		 *            if shared instances should be read.
+		 * @see AmfPrimitive#isShared()
+		 */
+		protected void setShared(boolean shared) {
+			this.shared = shared;
+		}
+
+		/**
+		 * Sets the pool that short strings are taken from, instead of decoding a new
+		 * string each time.
+		 * 
+		 * @param pool
+		 *            the pool to use, or null to not use one.
+		 */
+		protected void setStringPool(StringPool pool) {
+			this.pool = pool;
+		}
+
+		/**
+		 * Reads the remaining entries into the given file in two passes. The first
+		 * walks over the entries, recording where each value begins along with the
+		 * size of the string, trait and reference tables there. The second reads the
+		 * values in parallel on the given pool.
+		 * 
+		 * @param target
+		 *            the file to put the entries into.
+		 * @param pool
+		 *            the pool to read the values on.
+		 * @throws IOException
+		 *             the stream has been closed and the contained input stream does
+		 *             not support reading after close, or another I/O error occurs.
+		 * @throws UnexpectedDataException
+		 *             the stream data was not in an expected format.
+		 */
+		protected void readParallel(AmfFile target, ForkJoinPool pool) throws IOException, UnexpectedDataException {
+			List<EntryTask> tasks = new ArrayList<EntryTask>();
+			while (hasNext()) {
+				String key = readString();
+				tasks.add(new EntryTask(this, tasks, key, buffer.position(), stringCount, traitCount,
+						referenceTable.size()));
+				skipValue();
+				// trailer, skip byte
+				in.skipBytes(1);
+			}
+
+			for (EntryTask task : tasks) {
+				pool.execute(task);
+			}
+			try {
+				for (EntryTask task : tasks) {
+					target.put(task.key, task.join());
+				}
+			} catch (RuntimeException e) {
+				for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					if (cause instanceof UnexpectedDataException) {
+						throw (UnexpectedDataException) cause;
+					}
+				}
+				throw e;
+			}
+		}
+
 		private AmfArray readArray() throws IOException, UnexpectedDataException {
 			// Stored by ref?
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfArray) referenceTable.get(h.countIndexLength);
+				return (AmfArray) getReference(h.countIndexLength);
 			}
 
 			// Stored by value
@@ -246,35 +477,102 @@ public class AmfIO {
 
 			// Dense part (consecutive indices >=0 and <count)
 			for (int i = 0; i < h.countIndexLength; i++) {
-				AmfValue value = readValue();
-				result.add(value);
+				int type = in.readUnsignedByte();
+				if (type == AmfType.Integer.id) {
+					// integers fill most dense arrays, so they skip the type switch
+					result.add(readInteger());
+				} else {
+					result.add(readValue(type));
+				}
+			}
+
+			return result;
+		}
+
+		private AmfArray readArrayLazy() throws IOException, UnexpectedDataException {
+			// Stored by ref?
+			Header h = readHeader();
+			if (h.isReference) {
+				return (AmfArray) getReference(h.countIndexLength);
+			}
+
+			AmfArray result = new AmfArray();
+			referenceTable.add(result);
+			defer(result, null, h.countIndexLength);
+
+			// walk over the contents to find the end, they are read on load
+			while (readString().length() != 0) {
+				walkValue();
+			}
+			for (int i = 0; i < h.countIndexLength; i++) {
+				walkValue();
 			}
 
 			return result;
 		}
 
-		private AmfByteArray readByteArray() throws IOException {
+		/**
+		 * Reads the contents of a deferred object or array from the current position.
+		 */
+		private void readBody(AmfValue value, Trait trait, int denseSize)
+				throws IOException, UnexpectedDataException {
+			if (value instanceof AmfObject) {
+				AmfObject result = (AmfObject) value;
+				readSealed(result, trait);
+				if (trait.isDynamic()) {
+					Map<String, AmfValue> map = result.getDynamicMap();
+					while (true) {
+						String key = readString();
+						if (key.length() == 0) {
+							break;
+						}
+						map.put(key, readValue());
+					}
+				}
+				// custom data was already read with the object
+				return;
+			}
+
+			AmfArray result = (AmfArray) value;
+			while (true) {
+				String key = readString();
+				if (key.length() == 0) {
+					break;
+				}
+				result.put(key, readValue());
+			}
+			for (int i = 0; i < denseSize; i++) {
+				result.add(readValue());
+			}
+		}
+
+		private AmfByteArray readByteArray() throws IOException, UnexpectedDataException {
 			// Stored by ref?
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfByteArray) referenceTable.get(h.countIndexLength);
+				return (AmfByteArray) getReference(h.countIndexLength);
 			}
 
 			// Stored by value
-			byte[] array = new byte[h.countIndexLength];
-			in.readFully(array);
+			AmfByteArray aba;
+			if (views) {
+				aba = new AmfByteArray(buffer.slice(h.countIndexLength));
+			} else {
+				byte[] array = new byte[h.countIndexLength];
+				in.readFully(array);
 
-			AmfByteArray aba = new AmfByteArray();
-			aba.push(array);
+				aba = new AmfByteArray();
+				aba.push(array);
+			}
 			referenceTable.add(aba);
 			return aba;
 		}
 
-		private AmfDate readDate() throws IOException {
+		private AmfDate readDate() throws IOException, UnexpectedDataException {
 			// Stored by ref?
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfDate) referenceTable.get(h.countIndexLength);
+				return (AmfDate) getReference(h.countIndexLength);
 			}
 
 			// Stored by value
@@ -288,7 +586,7 @@ public class AmfIO {
 			// Stored by ref?
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfDictionary) referenceTable.get(h.countIndexLength);
+				return (AmfDictionary) getReference(h.countIndexLength);
 			}
 
 			// Stored by value
@@ -305,6 +603,18 @@ public class AmfIO {
 			return result;
 		}
 
+		private double[] readDoubles(int count) throws IOException {
+			double[] values = new double[count];
+			if (buffer != null) {
+				buffer.readDoubles(values);
+			} else {
+				for (int i = 0; i < count; ++i) {
+					values[i] = in.readDouble();
+				}
+			}
+			return values;
+		}
+
 		private AmfDouble readDouble() throws IOException {
 			return new AmfDouble(in.readDouble());
 		}
@@ -347,14 +657,61 @@ public class AmfIO {
 			return new Header(readU29());
 		}
 
+		private int[] readInts(int count) throws IOException {
+			int[] values = new int[count];
+			if (buffer != null) {
+				buffer.readInts(values);
+			} else {
+				for (int i = 0; i < count; ++i) {
+					values[i] = in.readInt();
+				}
+			}
+			return values;
+		}
+
 		private AmfInteger readInteger() throws IOException {
+			if (shared) {
+				return AmfInteger.shared(readS29());
+			}
 			return new AmfInteger(readS29());
 		}
 
+		private AmfObject readObjectLazy() throws IOException, UnexpectedDataException {
+			Header h = readHeader();
+			if (h.isReference) {
+				return (AmfObject) getReference(h.countIndexLength);
+			}
+
+			Trait trait = readTrait(h);
+			AmfObject result = new AmfObject();
+			result.setDynamic(trait.isDynamic());
+			result.setExternalizable(trait.isExternalizable());
+			result.setTraitName(trait.getName());
+			defer(result, trait, 0);
+
+			// walk over the properties to find the end, they are read on load
+			for (int i = 0; i < trait.getProperties().size(); ++i) {
+				walkValue();
+			}
+			if (trait.isDynamic()) {
+				while (readString().length() != 0) {
+					walkValue();
+				}
+			}
+
+			// custom data has no length, so it is read now
+			if (trait.isExternalizable()) {
+				result.setExternalizableObject(readExternal(trait));
+			}
+
+			referenceTable.add(result);
+			return result;
+		}
+
 		private AmfObject readObject() throws IOException, UnexpectedDataException {
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfObject) referenceTable.get(h.countIndexLength);
+				return (AmfObject) getReference(h.countIndexLength);
 			}
 
 			Trait trait = readTrait(h);
@@ -364,14 +721,11 @@ public class AmfIO {
 			result.setTraitName(trait.getName());
 
 			// read sealed properties
-			Map<String, AmfValue> map = result.getSealedMap();
-			for (String property : trait.getProperties()) {
-				map.put(property, readValue());
-			}
+			readSealed(result, trait);
 
 			// read dynamic properties
-			map = result.getDynamicMap();
 			if (trait.isDynamic()) {
+				Map<String, AmfValue> map = result.getDynamicMap();
 				while (true) {
 					String key = readString();
 					if (key.length() == 0) {
@@ -383,29 +737,33 @@ public class AmfIO {
 
 			// read custom data
 			if (trait.isExternalizable()) {
-				Externalizable ex = null;
-				for (ExternalizableFactory factory : factories) {
-					ex = factory.create(trait.getName());
-					if (ex != null) {
-						break;
-					}
-				}
-				if (ex == null) {
-					throw new UnsupportedOperationException(
-							"Externalizable factory does not support the externalizable data.");
-				}
-				try {
-					ex.readExternal(in);
-				} catch (UnexpectedDataException e) {
-					throw new UnsupportedOperationException("Externalizable cannot read the externalizable data.");
-				}
-				result.setExternalizableObject(ex);
+				result.setExternalizableObject(readExternal(trait));
 			}
 
 			referenceTable.add(result);
 			return result;
 		}
 
+		private Externalizable readExternal(Trait trait) throws IOException {
+			Externalizable ex = null;
+			for (ExternalizableFactory factory : factories) {
+				ex = factory.create(trait.getName());
+				if (ex != null) {
+					break;
+				}
+			}
+			if (ex == null) {
+				throw new UnsupportedOperationException(
+						"Externalizable factory does not support the externalizable data.");
+			}
+			try {
+				ex.readExternal(in);
+			} catch (UnexpectedDataException e) {
+				throw new UnsupportedOperationException("Externalizable cannot read the externalizable data.");
+			}
+			return ex;
+		}
+
 		private int readS29() throws IOException {
 			int result = readU29();
 			int maxPositiveInclusive = (1 << 28) - 1;
@@ -418,33 +776,168 @@ public class AmfIO {
 			return result - upperExclusiveBound;
 		}
 
+		/**
+		 * Gets the value at the given index of the reference table. When reading
+		 * lazily, the value is remembered as referenced, as it may then be reached by
+		 * more than one path. If the place of the value was held by skipping over it,
+		 * the value is read first.
+		 */
+		private AmfValue getReference(int index) throws IOException, UnexpectedDataException {
+			AmfValue value = referenceTable.get(index);
+			if (value == null) {
+				value = readSkipped(index);
+			}
+			if (referenced != null) {
+				referenced.add(value);
+			}
+			return value;
+		}
+
+		/**
+		 * Reads the value at the given index of the reference table, whose place was
+		 * held when the entry it is in was skipped over. The skipped value is read
+		 * again from where it began, filling in every place it held.
+		 */
+		private AmfValue readSkipped(int index) throws IOException, UnexpectedDataException {
+			Skipped held = null;
+			if (skipped != null) {
+				for (Skipped s : skipped) {
+					if (index >= s.base && index < s.end) {
+						held = s;
+						break;
+					}
+				}
+			}
+			if (held == null) {
+				throw new UnexpectedDataException(
+						String.format("The value at reference %d was skipped and cannot be read.", index));
+			}
+
+			final List<AmfValue> table = referenceTable;
+			final int base = held.base;
+			List<AmfValue> replayTable = new AbstractList<AmfValue>() {
+				private int size = base;
+
+				@Override
+				public boolean add(AmfValue value) {
+					table.set(size++, value);
+					return true;
+				}
+
+				@Override
+				public AmfValue get(int index) {
+					if (index >= size) {
+						throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+					}
+					return table.get(index);
+				}
+
+				@Override
+				public AmfValue set(int index, AmfValue value) {
+					return table.set(index, value);
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+			try (AmfInput replay = new AmfInput(this, held.position, held.stringCount, held.traitCount, replayTable,
+					false)) {
+				replay.readValue();
+			}
+			return referenceTable.get(index);
+		}
+
+		private String getString(int index) {
+			String str = stringTable.get(index);
+			if (str == null) {
+				// still a view of the input
+				str = AmfString.decode(pendingStrings.get(buffer, index));
+				stringTable.set(index, str);
+			}
+			return str;
+		}
+
 		private String readString() throws IOException {
+			int index = readStringIndex();
+			if (index == -1) {
+				return "";
+			}
+			return getString(index);
+		}
+
+		/**
+		 * Reads a string and returns its index in the string table, or -1 for the
+		 * empty string. When reading views the string is not decoded.
+		 */
+		private int readStringIndex() throws IOException {
 			Header h = readHeader();
 
 			// Stored by reference?
 			if (h.isReference) {
-				return stringTable.get(h.countIndexLength);
+				return h.countIndexLength;
 			}
 
 			// Empty string (never stored by ref) ?
 			if (h.countIndexLength == 0) {
-				return "";
+				return -1;
 			}
 
 			// Read the string
-			String str = readUTF8(h.countIndexLength);
-			stringTable.add(str);
+			if (stringCount < stringTable.size()) {
+				// already in the table when loading a deferred value
+				skipBytes(h.countIndexLength);
+			} else if (views) {
+				pendingStrings.put(stringTable.size(), buffer.position(), h.countIndexLength);
+				skipBytes(h.countIndexLength);
+				stringTable.add(null);
+			} else {
+				stringTable.add(readUTF8(h.countIndexLength));
+			}
 
-			return str;
+			return stringCount++;
+		}
+
+		private AmfString readStringValue() throws IOException {
+			int index = readStringIndex();
+			if (index == -1) {
+				return new AmfString();
+			}
+			if (stringTable.get(index) == null) {
+				return new AmfString(pendingStrings.get(buffer, index));
+			}
+			return new AmfString(stringTable.get(index));
 		}
 
 		private String readString(int length) throws IOException {
 			// UTF-8 support
 			byte[] data = new byte[length];
-			in.read(data);
+			in.readFully(data);
 			return new String(data, StandardCharsets.US_ASCII);
 		}
 
+		/**
+		 * Reads the sealed properties of the given trait into the object, which
+		 * shares the shape of the trait until a property is added or removed.
+		 */
+		private void readSealed(AmfObject result, Trait trait) throws IOException, UnexpectedDataException {
+			AmfObject.Shape shape = AmfObject.Shape.of(trait);
+			List<String> properties = trait.getProperties();
+			AmfValue[] values = new AmfValue[shape.size()];
+			if (shape.size() == properties.size()) {
+				for (int i = 0; i < values.length; ++i) {
+					values[i] = readValue();
+				}
+			} else {
+				// repeated names, the last value wins as it would in a map
+				for (String property : properties) {
+					values[shape.indexOf(property)] = readValue();
+				}
+			}
+			result.setSealed(shape, values);
+		}
+
 		private Trait readTrait(Header h) throws IOException {
 			boolean traitReference = h.readNextBit();
 			if (!traitReference) {
@@ -461,8 +954,15 @@ public class AmfIO {
 				props[i] = readString();
 			}
 
-			Trait trait = new SimpleTrait(name, dyn, ext, props);
-			traitTable.add(trait);
+			Trait trait;
+			if (traitCount < traitTable.size()) {
+				// already in the table when loading a deferred value
+				trait = traitTable.get(traitCount);
+			} else {
+				trait = new SimpleTrait(name, dyn, ext, props);
+				traitTable.add(trait);
+			}
+			++traitCount;
 
 			return trait;
 		}
@@ -473,6 +973,9 @@ public class AmfIO {
 			// The most significant bits are stored on the left (at the beginning).
 			// The fourth byte always have 8 significant bits.
 			// 7-7-7-8 or 7-7-7 or 7-7 or 7
+			if (buffer != null) {
+				return buffer.readU29();
+			}
 
 			int numBytes = 0;
 			int result = 0;
@@ -489,88 +992,123 @@ public class AmfIO {
 			}
 		}
 
+		/**
+		 * Gets the array that strings are read into before being looked up in the
+		 * pool, which fits the longest string the pool holds.
+		 */
+		private byte[] getPoolBuffer() {
+			if (poolBuffer == null || poolBuffer.length < pool.getMaxLength()) {
+				poolBuffer = new byte[pool.getMaxLength()];
+			}
+			return poolBuffer;
+		}
+
 		private String readUTF8(int length) throws IOException {
+			if (pool != null && length <= pool.getMaxLength()) {
+				byte[] data = getPoolBuffer();
+				in.readFully(data, 0, length);
+				return pool.get(data, 0, length);
+			}
+			if (buffer != null) {
+				return buffer.readUTF8(length);
+			}
 			// UTF-8 support
 			byte[] data = new byte[length];
-			in.read(data);
-			return new String(data, StandardCharsets.UTF_8);
+			in.readFully(data);
+			return AmfString.decode(data, 0, length);
 		}
 
 		private AmfValue readValue() throws IOException, UnexpectedDataException {
-			int typeId = in.readUnsignedByte();
-			AmfType type = AmfType.get(typeId);
-			switch (type) {
-			case Undefined:
-				return new AmfUndefined();
+			return readValue(in.readUnsignedByte());
+		}
 
-			case Null:
-				return new AmfNull();
+		private AmfValue readValue(int typeId) throws IOException, UnexpectedDataException {
+			if (!lazy) {
+				return readValueEager(typeId);
+			}
 
-			case True:
-				return new AmfBoolean(true);
+			int position = buffer.position();
+			Span span = spans.get(position);
+			if (span != null) {
+				// already read, continue after it
+				buffer.seek(span.end);
+				stringCount = span.stringCount;
+				traitCount = span.traitCount;
+				return span.value;
+			}
 
-			case False:
-				return new AmfBoolean(false);
+			int references = referenceTable.size();
+			int strings = stringCount;
+			int traits = traitCount;
+			AmfValue value;
+			if (typeId == AmfType.Object.id) {
+				value = readObjectLazy();
+			} else if (typeId == AmfType.Array.id) {
+				value = readArrayLazy();
+			} else {
+				value = readValueEager(typeId);
+			}
+			if (referenceTable.size() != references) {
+				// a new value, remember where it ends so it can be stepped over on load
+				spans.put(new Span(value, position, buffer.position(), strings, traits, stringCount, traitCount));
+			}
+			return value;
+		}
 
-			case Integer:
+		private AmfValue readValueEager(int typeId) throws IOException, UnexpectedDataException {
+			// switch on the type marker itself, see AmfType for the type of each
+			switch (typeId) {
+			case 0x00: // Undefined
+				return shared ? AmfUndefined.shared() : new AmfUndefined();
+			case 0x01: // Null
+				return shared ? AmfNull.shared() : new AmfNull();
+			case 0x02: // False
+				return shared ? AmfBoolean.shared(false) : new AmfBoolean(false);
+			case 0x03: // True
+				return shared ? AmfBoolean.shared(true) : new AmfBoolean(true);
+			case 0x04: // Integer
 				return readInteger();
-
-			case Double:
+			case 0x05: // Double
 				return readDouble();
-
-			case String:
-				return new AmfString(readString());
-
-			case Date:
+			case 0x06: // String
+				return readStringValue();
+			case 0x07: // XmlDoc
+				return readXmlDoc();
+			case 0x08: // Date
 				return readDate();
-
-			case ByteArray:
-				return readByteArray();
-
-			case Array:
+			case 0x09: // Array
 				return readArray();
-
-			case Object:
+			case 0x0A: // Object
 				return readObject();
-
-			case Dictionary:
-				return readDictionary();
-
-			case VectorInt:
+			case 0x0B: // Xml
+				return readXml();
+			case 0x0C: // ByteArray
+				return readByteArray();
+			case 0x0D: // VectorInt
 				return readVectorInt();
-
-			case VectorUInt:
+			case 0x0E: // VectorUInt
 				return readVectorUInt();
-
-			case VectorDouble:
+			case 0x0F: // VectorDouble
 				return readVectorDouble();
-
-			case VectorGeneric:
+			case 0x10: // VectorGeneric
 				return readVectorGeneric();
-
-			case XmlDoc:
-				return readXmlDoc();
-
-			case Xml:
-				return readXml();
+			case 0x11: // Dictionary
+				return readDictionary();
+			default:
+				throw new UnexpectedDataException(String.format("Unknown Value Type: 0x%x", typeId));
 			}
-
-			throw new UnexpectedDataException(String.format("Unknown Value Type: 0x%x", typeId));
 		}
 
-		private AmfVector.Double readVectorDouble() throws IOException {
+		private AmfVector.Double readVectorDouble() throws IOException, UnexpectedDataException {
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfVector.Double) referenceTable.get(h.countIndexLength);
+				return (AmfVector.Double) getReference(h.countIndexLength);
 			}
 			// Stored by value
 			boolean fixedLength = in.readBoolean();
-			AmfVector.Double result = new AmfVector.Double();
+			AmfVector.Double result = new AmfVector.Double(readDoubles(h.countIndexLength));
 			result.setFixedLength(fixedLength);
 			result.setCapacity(h.countIndexLength);
-			for (int i = 0; i < h.countIndexLength; ++i) {
-				result.add(new AmfDouble(in.readDouble()));
-			}
 			referenceTable.add(result);
 			return result;
 		}
@@ -578,7 +1116,7 @@ public class AmfIO {
 		private AmfVector.Generic readVectorGeneric() throws IOException, UnexpectedDataException {
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfVector.Generic) referenceTable.get(h.countIndexLength);
+				return (AmfVector.Generic) getReference(h.countIndexLength);
 			}
 			// Stored by value
 			boolean fixedLength = in.readBoolean();
@@ -593,576 +1131,2989 @@ public class AmfIO {
 			return result;
 		}
 
-		private AmfVector.Integer readVectorInt() throws IOException {
+		private AmfVector.Integer readVectorInt() throws IOException, UnexpectedDataException {
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfVector.Integer) referenceTable.get(h.countIndexLength);
+				return (AmfVector.Integer) getReference(h.countIndexLength);
 			}
 			// Stored by value
 			boolean fixedLength = in.readBoolean();
-			AmfVector.Integer result = new AmfVector.Integer();
+			AmfVector.Integer result = new AmfVector.Integer(readInts(h.countIndexLength));
 			result.setFixedLength(fixedLength);
 			result.setCapacity(h.countIndexLength);
-			for (int i = 0; i < h.countIndexLength; ++i) {
-				result.add(new AmfInteger(in.readInt()));
-			}
 			referenceTable.add(result);
 			return result;
 		}
 
-		private AmfVector.UnsignedInteger readVectorUInt() throws IOException {
+		private AmfVector.UnsignedInteger readVectorUInt() throws IOException, UnexpectedDataException {
 			Header h = readHeader();
 			if (h.isReference) {
-				return (AmfVector.UnsignedInteger) referenceTable.get(h.countIndexLength);
+				return (AmfVector.UnsignedInteger) getReference(h.countIndexLength);
 			}
 			// Stored by value
 			boolean fixedLength = in.readBoolean();
-			AmfVector.UnsignedInteger result = new AmfVector.UnsignedInteger();
+			AmfVector.UnsignedInteger result = new AmfVector.UnsignedInteger(readInts(h.countIndexLength));
 			result.setFixedLength(fixedLength);
 			result.setCapacity(h.countIndexLength);
-			for (int i = 0; i < h.countIndexLength; ++i) {
-				result.add(new AmfInteger(in.readInt() & 0xFFFFFFFF));
-			}
 			referenceTable.add(result);
 			return result;
 		}
 
-		private AmfXml readXml() throws IOException {
+		private AmfXml readXml() throws IOException, UnexpectedDataException {
 			return _readXml(false);
 		}
 
-		private AmfXml readXmlDoc() throws IOException {
-			return _readXml(true);
-		}
-	}
-
-	/**
-	 * Contains all Amf Output methods and logic.
-	 * 
-	 * @author Robert Maupin
-	 */
-	private static class AmfOutput implements Closeable, AutoCloseable {
-		private ByteArrayOutputStream buffer;
-		private List<ExternalizableFactory> factories;
-		private OutputStream fileOut;
-		private boolean headerWritten;
-		private boolean isFile;
-		private String name;
-		private DataOutputStream out;
-		private List<AmfValue> referenceTable;
-		private List<String> stringTable;
-		private List<Trait> traitTable;
-
-		public AmfOutput(OutputStream out, boolean file) {
-			if (!(out instanceof BufferedOutputStream)) {
-				out = new BufferedOutputStream(out);
+		/**
+		 * Walks over a value inside of a lazy object or array. Values that go into
+		 * the reference table are read, so they can be referenced, but nothing else
+		 * is built.
+		 */
+		private void walkValue() throws IOException, UnexpectedDataException {
+			int typeId = in.readUnsignedByte();
+			AmfType type = AmfType.get(typeId);
+			if (type == null) {
+				throw new UnexpectedDataException(String.format("Unknown Value Type: 0x%x", typeId));
+			}
+			switch (type) {
+			case Undefined:
+			case Null:
+			case True:
+			case False:
+				break;
+			case Integer:
+				readU29();
+				break;
+			case Double:
+				skipBytes(8);
+				break;
+			case String:
+				readStringIndex();
+				break;
+			default:
+				readValue(typeId);
+				break;
 			}
-			this.fileOut = out;
-			this.buffer = new ByteArrayOutputStream();
-			this.out = new DataOutputStream(this.buffer);
-			this.stringTable = new ArrayList<String>();
-			this.referenceTable = new ArrayList<AmfValue>();
-			this.traitTable = new ArrayList<Trait>();
-			this.factories = new ArrayList<ExternalizableFactory>();
-			this.headerWritten = false;
-			this.name = null;
-			this.isFile = file;
 		}
 
 		/**
-		 * Associates the specified ExternalizableFactory with this AmfInputStream.
-		 * Every ExternalizableFactory is called in the order they were added in attempt
-		 * to find one that will provide a proper Externalizable for use.
-		 * 
-		 * @param factory
-		 *            the ExternalizableFactory to add
+		 * Sets the loader of the given object or array, so that it reads its
+		 * contents from the current position when they are first used.
 		 */
-		protected void addExternalizableFactory(ExternalizableFactory factory) {
-			if (Objects.isNull(factory)) {
-				throw new IllegalArgumentException("The factory provided cannot be null.");
+		private void defer(AmfValue value, Trait trait, int denseSize) {
+			Deferred loader = new Deferred(this, value, trait, denseSize);
+			if (value instanceof AmfObject) {
+				((AmfObject) value).setLoader(loader);
+			} else {
+				((AmfArray) value).setLoader(loader);
 			}
-			factories.add(factory);
 		}
 
-		@Override
-		public void close() throws IOException {
-			out.close();
-
-			byte[] data = buffer.toByteArray();
-			buffer.close();
-
-			// update header length
-			if (isFile) {
-				int size = data.length - 6;
-
-				ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				DataOutputStream dos = new DataOutputStream(baos);
-				dos.writeInt(size);
-
-				byte[] sizeBytes = baos.toByteArray();
-				System.arraycopy(sizeBytes, 0, data, 2, 4);
+		private void skipBytes(int length) throws IOException {
+			if (in.skipBytes(length) != length) {
+				throw new EOFException();
 			}
-
-			// write to actual output
-			fileOut.write(data);
-			fileOut.flush();
-			fileOut.close();
 		}
 
 		/**
-		 * Set the name to be stored in the SOL file.
+		 * Advances past the next value in the input stream without building it.
+		 * Strings and traits are still added to their tables, and every value that
+		 * would be added to the reference table has its place held with null, so that
+		 * anything read afterwards will resolve its references to the same places as
+		 * if the value had been read.
 		 * 
-		 * @param name
-		 *            the file name to store in the SOL file.
-		 * @throws UnexpectedDataException
-		 *             the stream data was not in an expected format.
 		 * @throws IOException
 		 *             the stream has been closed and the contained input stream does
 		 *             not support reading after close, or another I/O error occurs.
+		 * @throws UnexpectedDataException
+		 *             the stream data was not in an expected format.
 		 */
-		protected void setName(String name) {
-			this.name = name;
-		}
-
-		private void writeArray(AmfArray arr) throws IOException {
-			if (!writeRef(arr)) {
-				writeU29Flag(arr.getDenseSize(), true);
-				// out.write(arr.getBackingArray(), 0, arr.size());
-				// write associative data (key-value pairs)
-				Map<String, AmfValue> ass = arr.getAssociative();
-				for (String key : ass.keySet()) {
-					writeString(key);
-					writeValue(ass.get(key));
-				}
-				writeString("");
-
-				// write dense data (list line 0 to count)
-				for (AmfValue val : arr.getDense()) {
-					writeValue(val);
-				}
+		protected void skipValue() throws IOException, UnexpectedDataException {
+			int typeId = in.readUnsignedByte();
+			AmfType type = AmfType.get(typeId);
+			if (type == null) {
+				throw new UnexpectedDataException(String.format("Unknown Value Type: 0x%x", typeId));
 			}
 
-		}
-
-		private void writeByteArray(AmfByteArray arr) throws IOException {
-			if (!writeRef(arr)) {
-				writeU29Flag(arr.size(), true);
-				out.write(arr.getBackingArray(), 0, arr.size());
+			switch (type) {
+			case Undefined:
+			case Null:
+			case True:
+			case False:
+				return;
+			case Integer:
+				readU29();
+				return;
+			case Double:
+				skipBytes(8);
+				return;
+			case String:
+				readStringIndex();
+				return;
+			default:
+				break;
 			}
-		}
 
-		private void writeDate(AmfDate date) throws IOException {
-			if (!writeRef(date)) {
-				writeU29Flag(0, true);
-				out.writeDouble(date.getValue());
+			Header h = readHeader();
+			if (h.isReference) {
+				return;
 			}
-		}
-
-		private void writeDictionary(AmfDictionary dict) throws IOException {
-			if (!writeRef(dict)) {
-				writeU29Flag(dict.size(), true);
-
-				// out.write
-				out.writeBoolean(dict.hasWeakKeys());
 
-				for (AmfValue key : dict.keySet()) {
-					writeValue(key);
-					writeValue(dict.get(key));
+			// the place in the reference table is held in the same order the read
+			// methods add their values
+			switch (type) {
+			case Date:
+				skipBytes(8);
+				referenceTable.add(null);
+				break;
+			case ByteArray:
+			case Xml:
+			case XmlDoc:
+				skipBytes(h.countIndexLength);
+				referenceTable.add(null);
+				break;
+			case Array:
+				referenceTable.add(null);
+				while (readString().length() != 0) {
+					skipValue();
+				}
+				for (int i = 0; i < h.countIndexLength; ++i) {
+					skipValue();
+				}
+				break;
+			case Object:
+				Trait trait = readTrait(h);
+				for (int i = 0; i < trait.getProperties().size(); ++i) {
+					skipValue();
+				}
+				if (trait.isDynamic()) {
+					while (readString().length() != 0) {
+						skipValue();
+					}
+				}
+				if (trait.isExternalizable()) {
+					// no way to know the length without reading it
+					readExternal(trait);
+				}
+				referenceTable.add(null);
+				break;
+			case Dictionary:
+				skipBytes(1);
+				referenceTable.add(null);
+				for (int i = 0; i < h.countIndexLength; ++i) {
+					skipValue();
+					skipValue();
+				}
+				break;
+			case VectorInt:
+			case VectorUInt:
+				skipBytes(1 + 4 * h.countIndexLength);
+				referenceTable.add(null);
+				break;
+			case VectorDouble:
+				skipBytes(1 + 8 * h.countIndexLength);
+				referenceTable.add(null);
+				break;
+			case VectorGeneric:
+				skipBytes(1);
+				readString();
+				for (int i = 0; i < h.countIndexLength; ++i) {
+					skipValue();
 				}
+				referenceTable.add(null);
+				break;
+			default:
+				break;
 			}
 		}
 
 		/**
-		 * Writes the given name/value to a SOL. If writing to an serialized AMFObject,
-		 * call this only once. Name will be ignored. Calling this more than once
-		 * outside of a file may produce undefined behavior.
-		 * 
-		 * If writing to an SOL file and the header has not been written, it will
-		 * automatically be written.
-		 * 
-		 * @param name
-		 *            The name of the entry
-		 * @param value
-		 *            The value of the entry
+		 * Reads the next entry in the input stream, reporting it to the given handler
+		 * instead of building a value.
 		 * 
+		 * @param handler
+		 *            the handler to report the entry to.
+		 * @return false if the handler has asked to stop reading, true otherwise.
 		 * @throws IOException
-		 *             if an I/O exception occured during the write.
+		 *             the stream has been closed and the contained input stream does
+		 *             not support reading after close, or another I/O error occurs.
+		 * @throws UnexpectedDataException
+		 *             the stream data was not in an expected format.
 		 */
-		protected void writeEntry(String name, AmfValue value) throws IOException {
-			writeFileHeader();
+		protected boolean scanNext(AmfHandler handler) throws IOException, UnexpectedDataException {
+			if (file && !headerRead) {
+				readFileHeader();
+			}
 
-			writeString(name);
-			writeValue(value);
+			String key = null;
+			if (file) {
+				key = readString();
+			}
+			if (handler.startEntry(key)) {
+				scanValue(handler);
+			} else {
+				skipValue();
+			}
 
-			// append trailing zero if a file
-			if (isFile) {
-				out.writeByte(0);
+			if (file) {
+				// trailer, skip byte
+				in.skipBytes(1);
 			}
+
+			return handler.endEntry();
 		}
 
-		private void writeFileHeader() throws IOException {
-			if (!isFile || headerWritten) {
+		private void scanArray(AmfHandler handler) throws IOException, UnexpectedDataException {
+			Header h = readHeader();
+			if (h.isReference) {
+				handler.reference(AmfType.Array, h.countIndexLength);
 				return;
 			}
-			// write BOM
-			out.writeByte(0);
-			out.writeByte(0xBF);
 
-			// file size placeholder
-			out.writeInt(0); // 4 bytes @ index 2
+			// same position in the table as readArray, but without the value
+			referenceTable.add(null);
+			handler.startArray(h.countIndexLength);
 
-			// write magic header
-			out.writeByte('T');
-			out.writeByte('C');
-			out.writeByte('S');
-			out.writeByte('O');
+			while (true) {
+				String key = readString();
+				if (key.length() == 0) {
+					break;
+				}
+				handler.property(key);
+				scanValue(handler);
+			}
 
-			// write some values??
-			// not sure what these values are actually
-			out.write(new byte[] { 0, 4, 0, 0, 0, 0 });
+			for (int i = 0; i < h.countIndexLength; i++) {
+				scanValue(handler);
+			}
 
-			// write name
-			byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
-			out.writeShort(nameBytes.length & 0xFFFF);
-			out.write(nameBytes);
-
-			// write version
-			out.writeInt(3);
-
-			headerWritten = true;
+			handler.endArray();
 		}
 
-		private void writeI29(int value) throws IOException {
-			final int upperExclusiveBound = 1 << 29;
-			if (value < 0) {
-				writeU29(value + upperExclusiveBound); // -x is stored as 2^29 - x
-			} else {
-				writeU29(value);
+		private void scanDictionary(AmfHandler handler) throws IOException, UnexpectedDataException {
+			Header h = readHeader();
+			if (h.isReference) {
+				handler.reference(AmfType.Dictionary, h.countIndexLength);
+				return;
 			}
-		}
-
-		private void writeObject(AmfObject obj) throws IOException {
-			if (!writeRef(obj)) {
-				writeTrait(obj.getTrait());
-
-				// sealed properties
-				Map<String, AmfValue> map = obj.getSealedMap();
-				for (String key : map.keySet()) {
-					AmfValue val = map.get(key);
-					writeValue(val);
-				}
 
-				// dynamic properties
-				if (obj.isDynamic()) {
-					map = obj.getDynamicMap();
-					for (String key : map.keySet()) {
-						writeString(key);
-						writeValue(map.get(key));
-					}
-					writeString("");
-				}
+			boolean weakKeys = in.readBoolean();
+			referenceTable.add(null);
+			handler.startDictionary(h.countIndexLength, weakKeys);
 
-				// externalizable properties
-				if (obj.isExternalizable()) {
-					Externalizable ext = obj.getExternalizableObject();
-					if (ext != null) {
-						ext.writeExternal(out);
-					}
-				}
+			for (int j = 0; j < h.countIndexLength; ++j) {
+				scanValue(handler);
+				scanValue(handler);
 			}
-		}
 
-		private void writePlainString(String str) throws IOException {
-			byte[] data = str.getBytes(StandardCharsets.UTF_8);
-			writeU29Flag(data.length, true);
-			out.write(data);
+			handler.endDictionary();
 		}
 
-		// Most object types are stored by reference so that they are only serialized
-		// once. After that only their reference index is stored.
-		/**
-		 * Write new reference or get reference
-		 * 
-		 * @param obj
-		 *            the object to write
-		 * @return true if reference exists, false otherwise.
-		 */
-		private boolean writeRef(AmfValue obj) throws IOException {
-			//no reference table when writing to a serialized reference
-			if(!isFile) {
-				return false;
-			}
-			
-			int index;
-
-			// My system works way better than ActionScript does at determining
-			// if two objects are equal, so I had to forcefully block things
-			// so that it is equally bad at determining if some things are equal
-			boolean beLessGoodPlox = obj instanceof AmfObject || obj instanceof AmfArray;
-			if (!beLessGoodPlox && (index = referenceTable.indexOf(obj)) != -1) {
-				writeU29Flag(index, false);
-				return true;
+		private void scanObject(AmfHandler handler) throws IOException, UnexpectedDataException {
+			Header h = readHeader();
+			if (h.isReference) {
+				handler.reference(AmfType.Object, h.countIndexLength);
+				return;
 			}
 
-			referenceTable.add(obj);
-			return false;
-		}
+			Trait trait = readTrait(h);
+			handler.startObject(trait.getName(), trait.isDynamic(), trait.isExternalizable());
 
-		private void writeString(String str) throws IOException {
-			int index = -1;
-			if (str.length() == 0) {
-				// empty string
-				writeU29Flag(0, true);
-			} else if (isFile && (index = stringTable.indexOf(str)) != -1) {
-				// reference
-				writeU29Flag(index, false);
-			} else {
-				// plain string
-				writePlainString(str);
-				//no string table when not writing to a file
-				if(isFile) {
-					stringTable.add(str);
-				}
+			for (String property : trait.getProperties()) {
+				handler.property(property);
+				scanValue(handler);
 			}
-		}
 
-		void writeTrait(Trait trait) throws IOException {
-			int index = -1;
-			if(isFile) {
-				index = traitTable.indexOf(trait);
-				if (index != -1) {
-					writeU29((index << 2) | 1);
-					return;
-				}
-				traitTable.add(trait);	
-			}
-			index = 3;
-			if (trait.isExternalizable()) {
-				index |= 4;
-			}
 			if (trait.isDynamic()) {
-				index |= 8;
-			}
-			List<String> props = trait.getProperties();
-			index |= (props.size() << 4);
-			writeU29(index);
-
-			writeString(trait.getName());
-			for (String name : props) {
-				writeString(name);
+				while (true) {
+					String key = readString();
+					if (key.length() == 0) {
+						break;
+					}
+					handler.property(key);
+					scanValue(handler);
+				}
 			}
-		}
-
-		private void writeU29(long value) throws IOException {
-			int iVal = (int) (value & 0x3FFFFFFF);
 
-			// much faster (and smaller!) than some complicated loop
-			if (value < 0x80) {
-				// 7 bits
-				out.writeByte(iVal & 0x7F);
-			} else if (value < 0x4000) {
-				// 14 bits
-				out.writeByte(0x80 | ((iVal >> 7) & 0x7F));
-				out.writeByte((iVal & 0x7F));
-			} else if (value < 0x200000) {
-				// 21 bits
-				out.writeByte(0x80 | ((iVal >> 14) & 0x7F));
-				out.writeByte(0x80 | ((iVal >> 7) & 0x7F));
-				out.writeByte((iVal & 0x7F));
-			} else {
-				// 29 bits, this one doesn't follow the above pattern
-				out.writeByte(0x80 | ((iVal >> 22) & 0x7F));
-				out.writeByte(0x80 | ((iVal >> 15) & 0x7F));
-				out.writeByte(0x80 | ((iVal >> 8) & 0x7F));
-				out.writeByte((iVal & 0xFF));
+			// custom data has to be read to get past it, but it is not reported
+			if (trait.isExternalizable()) {
+				readExternal(trait);
 			}
 
+			// same position in the table as readObject, but without the value
+			referenceTable.add(null);
+			handler.endObject();
 		}
 
-		private void writeU29Flag(long value, boolean flag) throws IOException {
-			value <<= 1;
-			if (flag) {
-				value |= 1;
+		private void scanValue(AmfHandler handler) throws IOException, UnexpectedDataException {
+			int typeId = in.readUnsignedByte();
+			AmfType type = AmfType.get(typeId);
+			if (type == null) {
+				throw new UnexpectedDataException(String.format("Unknown Value Type: 0x%x", typeId));
 			}
-			writeU29(value);
-		}
-
-		/**
-		 * Writes a given value to the stream.
-		 * 
-		 * @param value
-		 *            the value to write.
-		 * @throws IOException
-		 */
-		protected void writeValue(AmfValue value) throws IOException {
-			AmfType type = value.getType();
-			out.write(type.id);
 			switch (type) {
 			case Array:
-				writeArray((AmfArray) value);
-				break;
-			case ByteArray:
-				writeByteArray((AmfByteArray) value);
-				break;
-			case Date:
-				writeDate((AmfDate) value);
-				break;
-			case Dictionary:
-				writeDictionary((AmfDictionary) value);
-				break;
-			case Double:
-				out.writeDouble(((AmfDouble) value).getValue());
-				break;
-			case Integer:
-				writeI29(((AmfInteger) value).getValue());
+				scanArray(handler);
 				break;
 			case Object:
-				writeObject((AmfObject) value);
-				break;
-			case String:
-				writeString(((AmfString) value).getValue());
-				break;
-			case VectorDouble:
-				writeVector((AmfVector.Double) value);
+				scanObject(handler);
 				break;
-			case VectorGeneric:
-				writeVector((AmfVector.Generic) value);
+			case Dictionary:
+				scanDictionary(handler);
 				break;
 			case VectorInt:
-				writeVector((AmfVector.Integer) value);
-				break;
 			case VectorUInt:
-				writeVector((AmfVector.UnsignedInteger) value);
-				break;
-			case Xml:
-			case XmlDoc:
-				writeXml((AmfXml) value);
-				break;
-
-			case Null:
-			case False:
-			case True:
-			case Undefined:
-				// nothing more required
+			case VectorDouble:
+			case VectorGeneric:
+				scanVector(handler, type);
 				break;
 			default:
-				// WTF is this shit?
+				handler.value(readValue(typeId));
 				break;
 			}
 		}
 
-		private void writeVector(AmfVector.Double vec) throws IOException {
-			if (!writeRef(vec)) {
-				writeU29Flag(vec.size(), true);
-				out.writeBoolean(vec.isFixedLength());
-				for (AmfDouble val : vec) {
-					out.writeDouble(val.getValue());
-				}
+		private void scanVector(AmfHandler handler, AmfType type) throws IOException, UnexpectedDataException {
+			Header h = readHeader();
+			if (h.isReference) {
+				handler.reference(type, h.countIndexLength);
+				return;
 			}
-		}
 
-		private void writeVector(AmfVector.Generic vec) throws IOException {
-			if (!writeRef(vec)) {
-				writeU29Flag(vec.size(), true);
-				out.writeBoolean(vec.isFixedLength());
-				writeString(vec.getTypeName());
-				for (AmfValue val : vec) {
-					writeValue(val);
-				}
+			boolean fixedLength = in.readBoolean();
+			if (type == AmfType.VectorGeneric) {
+				// type name
+				readString();
 			}
-		}
+			handler.startVector(type, h.countIndexLength, fixedLength);
 
-		private void writeVector(AmfVector.Integer vec) throws IOException {
-			if (!writeRef(vec)) {
-				writeU29Flag(vec.size(), true);
-				out.writeBoolean(vec.isFixedLength());
-				for (AmfInteger val : vec) {
-					out.writeInt(val.getValue());
+			for (int i = 0; i < h.countIndexLength; ++i) {
+				switch (type) {
+				case VectorInt:
+					handler.intValue(in.readInt());
+					break;
+				case VectorUInt:
+					handler.unsignedIntValue(in.readInt() & 0xFFFFFFFFL);
+					break;
+				case VectorDouble:
+					handler.doubleValue(in.readDouble());
+					break;
+				default:
+					scanValue(handler);
+					break;
 				}
 			}
+
+			referenceTable.add(null);
+			handler.endVector();
 		}
 
-		private void writeVector(AmfVector.UnsignedInteger vec) throws IOException {
-			if (!writeRef(vec)) {
-				writeU29Flag(vec.size(), true);
-				out.writeBoolean(vec.isFixedLength());
-				for (AmfInteger val : vec) {
-					out.writeInt((int) val.getUnsignedValue());
-				}
-			}
+		private AmfXml readXmlDoc() throws IOException, UnexpectedDataException {
+			return _readXml(true);
 		}
+	}
 
-		private void writeXml(AmfXml xml) throws IOException {
-			if (!writeRef(xml)) {
-				writePlainString(xml.getValue());
+	/**
+	 * Contains all Amf Output methods and logic.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class AmfOutput implements Closeable, AutoCloseable {
+		private OutputBuffer buffer;
+		private boolean cacheStrings;
+		private ChannelOutput channel;
+		private List<ExternalizableFactory> factories;
+		private OutputStream fileOut;
+		private boolean headerWritten;
+		private boolean isFile;
+		private String name;
+		private Origin origin;
+		private DataOutputStream out;
+		private ByteBuffer scratch;
+		private ReferenceTable<AmfValue> referenceTable;
+		private int stringCount;
+		private Map<String, Integer> stringTable;
+		private ReferenceTable<Trait> traitTable;
+		private byte[] varint;
+
+		public AmfOutput(OutputStream out, boolean file) {
+			this(file);
+			this.fileOut = out;
+			this.buffer = new OutputBuffer();
+			this.out = new DataOutputStream(this.buffer);
+		}
+
+		/**
+		 * Creates an AmfOutput that writes straight to the channel of the given
+		 * ChannelOutput. The header length of a file is written in place when
+		 * flushed, so the output is never held in memory as a whole.
+		 * 
+		 * @param channel
+		 *            the channel output to write to.
+		 * @param file
+		 *            if the output should be in the SOL file format.
+		 */
+		public AmfOutput(ChannelOutput channel, boolean file) {
+			this(file);
+			this.channel = channel;
+			this.out = new DataOutputStream(channel);
+		}
+
+		private AmfOutput(boolean file) {
+			this.scratch = ByteBuffer.allocate(4096);
+			this.varint = new byte[4];
+			this.stringTable = new HashMap<String, Integer>();
+			this.referenceTable = new ReferenceTable<AmfValue>() {
+				@Override
+				protected int hash(AmfValue value) {
+					if (value instanceof AmfDictionary || value instanceof AmfVector.Generic) {
+						// these hash by identity, and hashing what they hold could load
+						// lazy values, so only their size is hashed, which equal ones share
+						int size = value instanceof AmfDictionary ? ((AmfDictionary) value).size()
+								: ((AmfVector.Generic) value).size();
+						return 31 * value.getType().id + size;
+					}
+					if (value instanceof AmfVector) {
+						return AmfUtils.deepHashCode(value);
+					}
+					return value.hashCode();
+				}
+			};
+			this.traitTable = new ReferenceTable<Trait>() {
+				@Override
+				protected int hash(Trait trait) {
+					return Objects.hash(trait.getName(), trait.isDynamic(), trait.isExternalizable(),
+							trait.getProperties());
+				}
+			};
+			this.factories = new ArrayList<ExternalizableFactory>();
+			this.headerWritten = false;
+			this.name = null;
+			this.isFile = file;
+		}
+
+		/**
+		 * Associates the specified ExternalizableFactory with this AmfInputStream.
+		 * Every ExternalizableFactory is called in the order they were added in attempt
+		 * to find one that will provide a proper Externalizable for use.
+		 * 
+		 * @param factory
+		 *            the ExternalizableFactory to add
+		 */
+		protected void addExternalizableFactory(ExternalizableFactory factory) {
+			if (Objects.isNull(factory)) {
+				throw new IllegalArgumentException("The factory provided cannot be null.");
+			}
+			factories.add(factory);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+			out.close();
+			if (fileOut != null) {
+				fileOut.close();
+			}
+		}
+
+		/**
+		 * Writes everything written so far to the actual output, updating the header
+		 * length of a file first.
+		 * 
+		 * @throws IOException
+		 *             if an I/O exception occured during the write.
+		 */
+		protected void flush() throws IOException {
+			// a file with no entries still has a header
+			writeFileHeader();
+			out.flush();
+
+			if (channel != null) {
+				// update header length in place
+				if (isFile && channel.size() >= 6) {
+					channel.setInt(2, (int) (channel.size() - 6));
+				}
+				return;
+			}
+
+			// update header length
+			if (isFile && buffer.size() >= 6) {
+				buffer.setInt(2, buffer.size() - 6);
+			}
+
+			// write to actual output
+			buffer.writeTo(fileOut);
+			fileOut.flush();
+		}
+
+		/**
+		 * Clears the tables and state of this output, keeping their capacity and
+		 * that of the buffer, and starts writing to the given output stream. The
+		 * factories are kept.
+		 * 
+		 * @param out
+		 *            the output stream to write to.
+		 * @param file
+		 *            if the output should be in the SOL file format.
+		 */
+		protected void reset(OutputStream out, boolean file) {
+			this.fileOut = out;
+			this.buffer.reset();
+			clear(file);
+		}
+
+		/**
+		 * Clears the tables and state of this output, keeping their capacity, and
+		 * starts writing to the given channel. This output must write to a
+		 * ChannelOutput.
+		 * 
+		 * @param channel
+		 *            the channel to write to.
+		 * @param file
+		 *            if the output should be in the SOL file format.
+		 * @throws IOException
+		 *             if the position of the channel could not be read.
+		 */
+		protected void reset(FileChannel channel, boolean file) throws IOException {
+			this.channel.reset(channel);
+			clear(file);
+		}
+
+		private void clear(boolean file) {
+			this.stringTable.clear();
+			this.stringCount = 0;
+			this.referenceTable.clear();
+			this.traitTable.clear();
+			this.origin = null;
+			this.headerWritten = false;
+			this.name = null;
+			this.isFile = file;
+		}
+
+		/**
+		 * Sets if the encoded form of each string written should be kept on the
+		 * AmfString, so writing it again only copies the data. The kept data is
+		 * dropped when the string is changed.
+		 * 
+		 * @param cacheStrings
+		 *            if the encoded strings should be kept.
+		 */
+		protected void setCacheStrings(boolean cacheStrings) {
+			this.cacheStrings = cacheStrings;
+		}
+
+		/**
+		 * Set the name to be stored in the SOL file.
+		 * 
+		 * @param name
+		 *            the file name to store in the SOL file.
+		 * @throws UnexpectedDataException
+		 *             the stream data was not in an expected format.
+		 * @throws IOException
+		 *             the stream has been closed and the contained input stream does
+		 *             not support reading after close, or another I/O error occurs.
+		 */
+		protected void setName(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Sets the lazy input the file being written was read from, if any, so the
+		 * objects and arrays in it that were never loaded can be copied from it
+		 * instead of being written again.
+		 * 
+		 * @param amf
+		 *            the file that will be written.
+		 */
+		protected void setOrigin(AmfFile amf) {
+			AmfInput input = Origin.find(amf.values());
+			this.origin = input == null ? null : new Origin(input);
+		}
+
+		private void writeArray(AmfArray arr) throws IOException {
+			if (origin != null && origin.copy(this, arr)) {
+				return;
+			}
+			if (!writeRef(arr)) {
+				writeU29Flag(arr.getDenseSize(), true);
+				// out.write(arr.getBackingArray(), 0, arr.size());
+				// write associative data (key-value pairs)
+				Map<String, AmfValue> ass = arr.getAssociative();
+				for (String key : ass.keySet()) {
+					writeString(key);
+					writeValue(ass.get(key));
+				}
+				writeString("");
+
+				// write dense data (list line 0 to count)
+				List<AmfValue> dense = arr.getDense();
+				for (int i = 0; i < dense.size();) {
+					if (dense.get(i) instanceof AmfInteger) {
+						i = writeIntegers(dense, i);
+					} else {
+						writeValue(dense.get(i++));
+					}
+				}
+			}
+
+		}
+
+		/**
+		 * Writes the run of integers in the given list that starts at the given index,
+		 * encoding them into the scratch buffer and writing it a chunk at a time.
+		 * 
+		 * @return the index after the run.
+		 */
+		private int writeIntegers(List<AmfValue> values, int index) throws IOException {
+			byte[] data = scratch.array();
+			int length = 0;
+			for (; index < values.size(); ++index) {
+				AmfValue value = values.get(index);
+				if (!(value instanceof AmfInteger)) {
+					break;
+				}
+				if (length + 5 > data.length) {
+					out.write(data, 0, length);
+					length = 0;
+				}
+				data[length++] = (byte) AmfType.Integer.id;
+				length = putI29(data, length, ((AmfInteger) value).getValue());
+			}
+			out.write(data, 0, length);
+			return index;
+		}
+
+		private void writeByteArray(AmfByteArray arr) throws IOException {
+			if (!writeRef(arr)) {
+				writeU29Flag(arr.size(), true);
+				out.write(arr.getBackingArray(), 0, arr.size());
+			}
+		}
+
+		private void writeDate(AmfDate date) throws IOException {
+			if (!writeRef(date)) {
+				writeU29Flag(0, true);
+				out.writeDouble(date.getValue());
+			}
+		}
+
+		/**
+		 * Writes the first given number of doubles through the scratch buffer, a
+		 * chunk at a time.
+		 */
+		private void writeDoubles(double[] values, int count) throws IOException {
+			for (int i = 0; i < count;) {
+				int length = Math.min(count - i, scratch.capacity() / 8);
+				scratch.clear();
+				scratch.asDoubleBuffer().put(values, i, length);
+				out.write(scratch.array(), 0, length * 8);
+				i += length;
+			}
+		}
+
+		private void writeDictionary(AmfDictionary dict) throws IOException {
+			if (!writeRef(dict)) {
+				writeU29Flag(dict.size(), true);
+
+				// out.write
+				out.writeBoolean(dict.hasWeakKeys());
+
+				for (AmfValue key : dict.keySet()) {
+					writeValue(key);
+					writeValue(dict.get(key));
+				}
+			}
+		}
+
+		/**
+		 * Writes the given name/value to a SOL. If writing to an serialized AMFObject,
+		 * call this only once. Name will be ignored. Calling this more than once
+		 * outside of a file may produce undefined behavior.
+		 * 
+		 * If writing to an SOL file and the header has not been written, it will
+		 * automatically be written.
+		 * 
+		 * @param name
+		 *            The name of the entry
+		 * @param value
+		 *            The value of the entry
+		 * 
+		 * @throws IOException
+		 *             if an I/O exception occured during the write.
+		 */
+		protected void writeEntry(String name, AmfValue value) throws IOException {
+			writeFileHeader();
+
+			writeString(name);
+			writeValue(value);
+
+			// append trailing zero if a file
+			if (isFile) {
+				out.writeByte(0);
+			}
+		}
+
+		private void writeFileHeader() throws IOException {
+			if (!isFile || headerWritten) {
+				return;
+			}
+			// write BOM
+			out.writeByte(0);
+			out.writeByte(0xBF);
+
+			// file size placeholder
+			out.writeInt(0); // 4 bytes @ index 2
+
+			// write magic header
+			out.writeByte('T');
+			out.writeByte('C');
+			out.writeByte('S');
+			out.writeByte('O');
+
+			// write some values??
+			// not sure what these values are actually
+			out.write(new byte[] { 0, 4, 0, 0, 0, 0 });
+
+			// write name
+			byte[] nameBytes = name.getBytes(StandardCharsets.US_ASCII);
+			out.writeShort(nameBytes.length & 0xFFFF);
+			out.write(nameBytes);
+
+			// write version
+			out.writeInt(3);
+
+			headerWritten = true;
+		}
+
+		private void writeI29(int value) throws IOException {
+			int length = putI29(varint, 0, value);
+			out.write(varint, 0, length);
+		}
+
+		/**
+		 * Writes the first given number of ints through the scratch buffer, a chunk
+		 * at a time.
+		 */
+		private void writeInts(int[] values, int count) throws IOException {
+			for (int i = 0; i < count;) {
+				int length = Math.min(count - i, scratch.capacity() / 4);
+				scratch.clear();
+				scratch.asIntBuffer().put(values, i, length);
+				out.write(scratch.array(), 0, length * 4);
+				i += length;
+			}
+		}
+
+		private void writeObject(AmfObject obj) throws IOException {
+			if (origin != null && origin.copy(this, obj)) {
+				return;
+			}
+			if (!writeRef(obj)) {
+				writeTrait(obj.getTrait());
+
+				// sealed properties
+				int size = obj.getSealedSize();
+				for (int i = 0; i < size; ++i) {
+					writeValue(obj.getSealedValue(i));
+				}
+
+				// dynamic properties
+				if (obj.isDynamic()) {
+					Map<String, AmfValue> map = obj.getDynamicMap();
+					for (String key : map.keySet()) {
+						writeString(key);
+						writeValue(map.get(key));
+					}
+					writeString("");
+				}
+
+				// externalizable properties
+				if (obj.isExternalizable()) {
+					Externalizable ext = obj.getExternalizableObject();
+					if (ext != null) {
+						ext.writeExternal(out);
+					}
+				}
+			}
+		}
+
+		private void writePlainString(String str) throws IOException {
+			// the length is needed first, so the string is measured then encoded in place
+			int length = AmfString.encodedLength(str);
+			writeU29Flag(length, true);
+			byte[] data = scratch.array();
+			if (length > data.length) {
+				data = new byte[length];
+			}
+			AmfString.encode(str, data, 0);
+			out.write(data, 0, length);
+		}
+
+		/**
+		 * Writes the given string, copying its encoded form if it is known instead of
+		 * encoding it again.
+		 */
+		private void writePlainString(AmfString value) throws IOException {
+			ByteBuffer encoded = value.getEncoded();
+			if (encoded == null) {
+				if (!cacheStrings) {
+					writePlainString(value.getValue());
+					return;
+				}
+				String str = value.getValue();
+				byte[] data = new byte[AmfString.encodedLength(str)];
+				AmfString.encode(str, data, 0);
+				value.setEncoded(data);
+				encoded = value.getEncoded();
+			}
+			int length = encoded.remaining();
+			writeU29Flag(length, true);
+			if (encoded.hasArray()) {
+				out.write(encoded.array(), encoded.arrayOffset() + encoded.position(), length);
+				return;
+			}
+			ByteBuffer src = encoded.duplicate();
+			while (src.hasRemaining()) {
+				int count = Math.min(src.remaining(), scratch.capacity());
+				src.get(scratch.array(), 0, count);
+				out.write(scratch.array(), 0, count);
+			}
+		}
+
+		// Most object types are stored by reference so that they are only serialized
+		// once. After that only their reference index is stored.
+		/**
+		 * Write new reference or get reference
+		 * 
+		 * @param obj
+		 *            the object to write
+		 * @return true if reference exists, false otherwise.
+		 */
+		private boolean writeRef(AmfValue obj) throws IOException {
+			//no reference table when writing to a serialized reference
+			if(!isFile) {
+				return false;
+			}
+			
+			int index;
+
+			// My system works way better than ActionScript does at determining
+			// if two objects are equal, so I had to forcefully block things
+			// so that it is equally bad at determining if some things are equal
+			boolean beLessGoodPlox = obj instanceof AmfObject || obj instanceof AmfArray;
+			if (beLessGoodPlox) {
+				// still takes up an index, it just can never be referenced
+				if (origin != null) {
+					origin.matchReference(referenceTable.size(), obj);
+				}
+				referenceTable.reserve();
+				return false;
+			}
+			if ((index = referenceTable.indexOf(obj)) != -1) {
+				writeU29Flag(index, false);
+				return true;
+			}
+
+			if (origin != null) {
+				origin.matchReference(referenceTable.size(), obj);
+			}
+			referenceTable.add(obj);
+			return false;
+		}
+
+		private void writeString(String str) throws IOException {
+			if (!writeStringRef(str)) {
+				writePlainString(str);
+			}
+		}
+
+		private void writeString(AmfString value) throws IOException {
+			if (!writeStringRef(value.getValue())) {
+				writePlainString(value);
+			}
+		}
+
+		/**
+		 * Writes the empty string, or a reference if the string was already written.
+		 * Otherwise the string is added to the table and must be written in full.
+		 * 
+		 * @return true if the string was written, false otherwise.
+		 */
+		private boolean writeStringRef(String str) throws IOException {
+			int index = -1;
+			if (str.length() == 0) {
+				// empty string
+				writeU29Flag(0, true);
+				return true;
+			}
+			if (isFile && (index = stringTable.getOrDefault(str, -1)) != -1) {
+				// reference
+				writeU29Flag(index, false);
+				return true;
+			}
+			//no string table when not writing to a file
+			if(isFile) {
+				if (origin != null) {
+					origin.matchString(stringCount, str);
+				}
+				stringTable.put(str, stringCount++);
+			}
+			return false;
+		}
+
+		void writeTrait(Trait trait) throws IOException {
+			int index = -1;
+			if(isFile) {
+				index = traitTable.indexOf(trait);
+				if (index != -1) {
+					writeU29((index << 2) | 1);
+					return;
+				}
+				if (origin != null) {
+					origin.matchTrait(traitTable.size(), trait);
+				}
+				traitTable.add(trait);
+			}
+			index = 3;
+			if (trait.isExternalizable()) {
+				index |= 4;
+			}
+			if (trait.isDynamic()) {
+				index |= 8;
+			}
+			List<String> props = trait.getProperties();
+			index |= (props.size() << 4);
+			writeU29(index);
+
+			writeString(trait.getName());
+			for (String name : props) {
+				writeString(name);
+			}
+		}
+
+		private void writeU29(long value) throws IOException {
+			// encoded first, so the output only sees one write
+			int length = putU29(varint, 0, value);
+			out.write(varint, 0, length);
+		}
+
+		/**
+		 * Encodes the given signed integer as a U29 into the given array, which must
+		 * have room for four bytes.
+		 * 
+		 * @return the offset after the encoded value.
+		 */
+		private static int putI29(byte[] data, int offset, int value) {
+			final int upperExclusiveBound = 1 << 29;
+			if (value < 0) {
+				return putU29(data, offset, value + upperExclusiveBound); // -x is stored as 2^29 - x
+			}
+			return putU29(data, offset, value);
+		}
+
+		/**
+		 * Encodes the given value as a U29 into the given array, which must have room
+		 * for four bytes.
+		 * 
+		 * @return the offset after the encoded value.
+		 */
+		private static int putU29(byte[] data, int offset, long value) {
+			int iVal = (int) (value & 0x3FFFFFFF);
+
+			// much faster (and smaller!) than some complicated loop
+			if (value < 0x80) {
+				// 7 bits
+				data[offset++] = (byte) (iVal & 0x7F);
+			} else if (value < 0x4000) {
+				// 14 bits
+				data[offset++] = (byte) (0x80 | ((iVal >> 7) & 0x7F));
+				data[offset++] = (byte) (iVal & 0x7F);
+			} else if (value < 0x200000) {
+				// 21 bits
+				data[offset++] = (byte) (0x80 | ((iVal >> 14) & 0x7F));
+				data[offset++] = (byte) (0x80 | ((iVal >> 7) & 0x7F));
+				data[offset++] = (byte) (iVal & 0x7F);
+			} else {
+				// 29 bits, this one doesn't follow the above pattern
+				data[offset++] = (byte) (0x80 | ((iVal >> 22) & 0x7F));
+				data[offset++] = (byte) (0x80 | ((iVal >> 15) & 0x7F));
+				data[offset++] = (byte) (0x80 | ((iVal >> 8) & 0x7F));
+				data[offset++] = (byte) (iVal & 0xFF);
+			}
+			return offset;
+		}
+
+		private void writeU29Flag(long value, boolean flag) throws IOException {
+			value <<= 1;
+			if (flag) {
+				value |= 1;
+			}
+			writeU29(value);
+		}
+
+		/**
+		 * Writes a given value to the stream.
+		 * 
+		 * @param value
+		 *            the value to write.
+		 * @throws IOException
+		 */
+		protected void writeValue(AmfValue value) throws IOException {
+			AmfType type = value.getType();
+			out.write(type.id);
+			switch (type) {
+			case Array:
+				writeArray((AmfArray) value);
+				break;
+			case ByteArray:
+				writeByteArray((AmfByteArray) value);
+				break;
+			case Date:
+				writeDate((AmfDate) value);
+				break;
+			case Dictionary:
+				writeDictionary((AmfDictionary) value);
+				break;
+			case Double:
+				out.writeDouble(((AmfDouble) value).getValue());
+				break;
+			case Integer:
+				writeI29(((AmfInteger) value).getValue());
+				break;
+			case Object:
+				writeObject((AmfObject) value);
+				break;
+			case String:
+				writeString((AmfString) value);
+				break;
+			case VectorDouble:
+				writeVector((AmfVector.Double) value);
+				break;
+			case VectorGeneric:
+				writeVector((AmfVector.Generic) value);
+				break;
+			case VectorInt:
+				writeVector((AmfVector.Integer) value);
+				break;
+			case VectorUInt:
+				writeVector((AmfVector.UnsignedInteger) value);
+				break;
+			case Xml:
+			case XmlDoc:
+				writeXml((AmfXml) value);
+				break;
+
+			case Null:
+			case False:
+			case True:
+			case Undefined:
+				// nothing more required
+				break;
+			default:
+				// WTF is this shit?
+				break;
+			}
+		}
+
+		private void writeVector(AmfVector.Double vec) throws IOException {
+			if (!writeRef(vec)) {
+				writeU29Flag(vec.size(), true);
+				out.writeBoolean(vec.isFixedLength());
+				writeDoubles(vec.getBackingArray(), vec.size());
+			}
+		}
+
+		private void writeVector(AmfVector.Generic vec) throws IOException {
+			if (!writeRef(vec)) {
+				writeU29Flag(vec.size(), true);
+				out.writeBoolean(vec.isFixedLength());
+				writeString(vec.getTypeName());
+				for (AmfValue val : vec) {
+					writeValue(val);
+				}
+			}
+		}
+
+		private void writeVector(AmfVector.Integer vec) throws IOException {
+			if (!writeRef(vec)) {
+				writeU29Flag(vec.size(), true);
+				out.writeBoolean(vec.isFixedLength());
+				writeInts(vec.getBackingArray(), vec.size());
+			}
+		}
+
+		private void writeVector(AmfVector.UnsignedInteger vec) throws IOException {
+			if (!writeRef(vec)) {
+				writeU29Flag(vec.size(), true);
+				out.writeBoolean(vec.isFixedLength());
+				writeInts(vec.getBackingArray(), vec.size());
+			}
+		}
+
+		private void writeXml(AmfXml xml) throws IOException {
+			if (!writeRef(xml)) {
+				writePlainString(xml);
+			}
+		}
+
+	}
+
+	/**
+	 * A table used to look up the index of previously written values. Values are
+	 * bucketed by hash, and only the values in the matching bucket are compared
+	 * with equals, in the order they were added. This gives the same index a
+	 * linear indexOf would, without having to check every entry.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static abstract class ReferenceTable<T> {
+		private Map<Integer, List<Integer>> buckets;
+		private Map<T, Integer> identities;
+		private List<T> values;
+
+		protected ReferenceTable() {
+			buckets = new HashMap<Integer, List<Integer>>();
+			identities = new IdentityHashMap<T, Integer>();
+			values = new ArrayList<T>();
+		}
+
+		/**
+		 * Adds the value to the end of the table.
+		 * 
+		 * @param value
+		 *            the value to add
+		 */
+		protected void add(T value) {
+			int index = values.size();
+			values.add(value);
+			identities.put(value, index);
+			buckets.computeIfAbsent(hash(value), k -> new ArrayList<Integer>(1)).add(index);
+		}
+
+		/**
+		 * Hashes the given value. Values that are equal must have the same hash.
+		 * 
+		 * @param value
+		 *            the value to hash
+		 * @return the hash
+		 */
+		protected abstract int hash(T value);
+
+		/**
+		 * Finds the index of the first value in the table that equals the given
+		 * value.
+		 * 
+		 * @param value
+		 *            the value to search for
+		 * @return the index, or -1 if there is no such value
+		 */
+		protected int indexOf(T value) {
+			Integer index = identities.get(value);
+			if (index != null) {
+				return index;
+			}
+			List<Integer> bucket = buckets.get(hash(value));
+			if (bucket != null) {
+				for (Integer i : bucket) {
+					if (value.equals(values.get(i))) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Gets the number of indices taken in the table.
+		 * 
+		 * @return the size of the table
+		 */
+		protected int size() {
+			return values.size();
+		}
+
+		/**
+		 * Removes every value from the table.
+		 */
+		protected void clear() {
+			buckets.clear();
+			identities.clear();
+			values.clear();
+		}
+
+		/**
+		 * Takes up the next index in the table with a value that is never matched.
+		 */
+		protected void reserve() {
+			values.add(null);
+		}
+	}
+
+	/**
+	 * Writes to a FileChannel through a direct buffer, which can be reused from
+	 * one channel to the next. Data already written can be changed in place, so
+	 * the header of a file can be updated once everything else is written.
+	 * Closing this closes the channel, but the buffer can still be used.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class ChannelOutput extends OutputStream {
+		private ByteBuffer buffer;
+		private FileChannel channel;
+		private long size;
+		private long start;
+
+		protected ChannelOutput(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+			channel.close();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * Starts writing to the given channel at its current position.
+		 */
+		protected void reset(FileChannel channel) throws IOException {
+			this.channel = channel;
+			this.start = channel.position();
+			this.size = 0;
+			buffer.clear();
+		}
+
+		/**
+		 * Sets the four bytes at the given offset from where writing started to the
+		 * given big endian int. The bytes must have been flushed.
+		 */
+		protected void setInt(long offset, int value) throws IOException {
+			ByteBuffer data = ByteBuffer.allocate(4);
+			data.putInt(value);
+			data.flip();
+			while (data.hasRemaining()) {
+				channel.write(data, start + offset + data.position());
+			}
+		}
+
+		/**
+		 * Returns the number of bytes written since writing started.
+		 */
+		protected long size() {
+			return size;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (!buffer.hasRemaining()) {
+				flush();
+			}
+			buffer.put((byte) b);
+			++size;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			size += len;
+			while (len > 0) {
+				if (!buffer.hasRemaining()) {
+					flush();
+				}
+				int count = Math.min(len, buffer.remaining());
+				buffer.put(b, off, count);
+				off += count;
+				len -= count;
+			}
+		}
+	}
+
+	/**
+	 * A ByteArrayOutputStream that can change written data in place, so the
+	 * header of a file can be updated without copying it.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class OutputBuffer extends ByteArrayOutputStream {
+		/**
+		 * Sets the four bytes at the given offset to the given big endian int.
+		 */
+		protected void setInt(int offset, int value) {
+			buf[offset] = (byte) (value >>> 24);
+			buf[offset + 1] = (byte) (value >>> 16);
+			buf[offset + 2] = (byte) (value >>> 8);
+			buf[offset + 3] = (byte) value;
+		}
+	}
+
+	/**
+	 * Reads big endian data from a ByteBuffer, such as a heap buffer or one mapped
+	 * from a file. Every read checks that enough data remains first and throws an
+	 * EOFException if it does not, the same as a DataInputStream would.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class BufferInput implements DataInput {
+		private ByteBuffer buffer;
+
+		protected BufferInput(ByteBuffer buffer) {
+			this.buffer = buffer;
+			this.buffer.order(ByteOrder.BIG_ENDIAN);
+		}
+
+		protected BufferInput duplicate() {
+			return new BufferInput(buffer.duplicate());
+		}
+
+		protected int position() {
+			return buffer.position();
+		}
+
+		@Override
+		public boolean readBoolean() throws IOException {
+			return readByte() != 0;
+		}
+
+		@Override
+		public byte readByte() throws IOException {
+			require(1);
+			return buffer.get();
+		}
+
+		@Override
+		public char readChar() throws IOException {
+			require(2);
+			return buffer.getChar();
+		}
+
+		@Override
+		public double readDouble() throws IOException {
+			require(8);
+			return buffer.getDouble();
+		}
+
+		@Override
+		public float readFloat() throws IOException {
+			require(4);
+			return buffer.getFloat();
+		}
+
+		@Override
+		public void readFully(byte[] b) throws IOException {
+			readFully(b, 0, b.length);
+		}
+
+		@Override
+		public void readFully(byte[] b, int off, int len) throws IOException {
+			require(len);
+			buffer.get(b, off, len);
+		}
+
+		@Override
+		public int readInt() throws IOException {
+			require(4);
+			return buffer.getInt();
+		}
+
+		@Override
+		public String readLine() throws IOException {
+			if (!buffer.hasRemaining()) {
+				return null;
+			}
+			StringBuilder buf = new StringBuilder();
+			while (buffer.hasRemaining()) {
+				char c = (char) (buffer.get() & 0xFF);
+				if (c == '\n') {
+					break;
+				}
+				if (c == '\r') {
+					if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+						buffer.get();
+					}
+					break;
+				}
+				buf.append(c);
+			}
+			return buf.toString();
+		}
+
+		@Override
+		public long readLong() throws IOException {
+			require(8);
+			return buffer.getLong();
+		}
+
+		@Override
+		public short readShort() throws IOException {
+			require(2);
+			return buffer.getShort();
+		}
+
+		/**
+		 * Reads a U29 with a single check of the remaining data, as long as there are
+		 * at least 4 bytes left.
+		 */
+		protected int readU29() throws IOException {
+			if (buffer.remaining() < 4) {
+				// near the end, check each byte
+				int result = 0;
+				for (int i = 0; i < 3; ++i) {
+					int b = readUnsignedByte();
+					result = (result << 7) | (b & 0x7F);
+					if ((b & 0x80) == 0) {
+						return result;
+					}
+				}
+				return (result << 8) | readUnsignedByte();
+			}
+
+			int b = buffer.get();
+			if (b >= 0) {
+				return b;
+			}
+			int result = b & 0x7F;
+			b = buffer.get();
+			if (b >= 0) {
+				return (result << 7) | b;
+			}
+			result = (result << 7) | (b & 0x7F);
+			b = buffer.get();
+			if (b >= 0) {
+				return (result << 7) | b;
+			}
+			result = (result << 7) | (b & 0x7F);
+			return (result << 8) | (buffer.get() & 0xFF);
+		}
+
+		@Override
+		public int readUnsignedByte() throws IOException {
+			require(1);
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		public int readUnsignedShort() throws IOException {
+			require(2);
+			return buffer.getShort() & 0xFFFF;
+		}
+
+		@Override
+		public String readUTF() throws IOException {
+			return DataInputStream.readUTF(this);
+		}
+
+		/**
+		 * Reads enough doubles to fill the given array.
+		 */
+		protected void readDoubles(double[] values) throws EOFException {
+			if (values.length > buffer.remaining() / 8) {
+				throw new EOFException();
+			}
+			buffer.asDoubleBuffer().get(values);
+			buffer.position(buffer.position() + values.length * 8);
+		}
+
+		/**
+		 * Reads enough ints to fill the given array.
+		 */
+		protected void readInts(int[] values) throws EOFException {
+			if (values.length > buffer.remaining() / 4) {
+				throw new EOFException();
+			}
+			buffer.asIntBuffer().get(values);
+			buffer.position(buffer.position() + values.length * 4);
+		}
+
+		protected int remaining() {
+			return buffer.remaining();
+		}
+
+		/**
+		 * Decodes a UTF-8 string of the given length in bytes straight from the
+		 * buffer.
+		 */
+		protected String readUTF8(int length) throws EOFException {
+			require(length);
+			int start = buffer.position();
+			buffer.position(start + length);
+			return AmfString.decode(buffer, start, length);
+		}
+
+		/**
+		 * Writes the data between the given positions to the given output, without
+		 * changing the position.
+		 */
+		protected void copy(int start, int end, OutputStream out) throws IOException {
+			if (buffer.hasArray()) {
+				out.write(buffer.array(), buffer.arrayOffset() + start, end - start);
+				return;
+			}
+			ByteBuffer src = buffer.duplicate();
+			src.limit(end);
+			src.position(start);
+			byte[] data = new byte[Math.min(end - start, 8192)];
+			while (src.hasRemaining()) {
+				int count = Math.min(src.remaining(), data.length);
+				src.get(data, 0, count);
+				out.write(data, 0, count);
+			}
+		}
+
+		/**
+		 * Returns a view of the next given number of bytes, and advances past them.
+		 */
+		protected ByteBuffer slice(int length) throws EOFException {
+			require(length);
+			ByteBuffer slice = view(buffer.position(), length);
+			buffer.position(buffer.position() + length);
+			return slice;
+		}
+
+		/**
+		 * Returns a view of the given number of bytes at the given position, without
+		 * changing the position.
+		 */
+		protected ByteBuffer view(int start, int length) {
+			ByteBuffer view = buffer.duplicate();
+			view.limit(start + length);
+			view.position(start);
+			return view.slice();
+		}
+
+		private void require(int length) throws EOFException {
+			if (length < 0 || buffer.remaining() < length) {
+				throw new EOFException();
+			}
+		}
+
+		protected void seek(int position) {
+			buffer.position(position);
+		}
+
+		@Override
+		public int skipBytes(int n) {
+			n = Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + n);
+			return n;
+		}
+	}
+
+	/**
+	 * Reads the value of one entry of a file that is read in parallel. The entry
+	 * has its own part of the reference table, which starts at the size the table
+	 * had at the start of the entry. A reference to a value of an earlier entry
+	 * waits for that entry to be read.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class EntryTask extends RecursiveTask<AmfValue> {
+		private static final long serialVersionUID = -4164393442577519618L;
+		protected final int base;
+		protected final String key;
+		protected final int ordinal;
+		protected final int position;
+		protected final AmfInput source;
+		protected final int stringCount;
+		protected final List<EntryTask> tasks;
+		protected final int traitCount;
+		protected final List<AmfValue> values;
+
+		protected EntryTask(AmfInput source, List<EntryTask> tasks, String key, int position, int stringCount,
+				int traitCount, int base) {
+			this.source = source;
+			this.tasks = tasks;
+			this.ordinal = tasks.size();
+			this.key = key;
+			this.position = position;
+			this.stringCount = stringCount;
+			this.traitCount = traitCount;
+			this.base = base;
+			this.values = new ArrayList<AmfValue>();
+		}
+
+		@Override
+		protected AmfValue compute() {
+			List<AmfValue> table = new AbstractList<AmfValue>() {
+				@Override
+				public boolean add(AmfValue value) {
+					return values.add(value);
+				}
+
+				@Override
+				public AmfValue get(int index) {
+					return getReference(index);
+				}
+
+				@Override
+				public int size() {
+					return base + values.size();
+				}
+			};
+			try (AmfInput input = new AmfInput(source, position, stringCount, traitCount, table, false)) {
+				return input.readValue();
+			} catch (IOException | UnexpectedDataException e) {
+				throw new IllegalStateException("Could not read the entry.", e);
+			}
+		}
+
+		private AmfValue getReference(int index) {
+			if (index >= base) {
+				return values.get(index - base);
+			}
+			// find the earlier entry the value belongs to
+			int low = 0;
+			int high = ordinal - 1;
+			while (low < high) {
+				int mid = (low + high + 1) >>> 1;
+				if (tasks.get(mid).base <= index) {
+					low = mid;
+				} else {
+					high = mid - 1;
+				}
+			}
+			EntryTask owner = tasks.get(low);
+			owner.join();
+			return owner.getReference(index);
+		}
+	}
+
+	/**
+	 * An entry value that was skipped over, with where it began and the sizes of
+	 * the string and trait tables there, along with the places it held in the
+	 * reference table.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class Skipped {
+		protected final int base;
+		protected final int end;
+		protected final int position;
+		protected final int stringCount;
+		protected final int traitCount;
+
+		protected Skipped(int position, int stringCount, int traitCount, int base, int end) {
+			this.position = position;
+			this.stringCount = stringCount;
+			this.traitCount = traitCount;
+			this.base = base;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Loads a deferred object or array by reading its contents from where they
+	 * were in the lazy input it came from.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class Deferred implements Runnable {
+		private final int denseSize;
+		private final AmfInput input;
+		private final int position;
+		private final int stringCount;
+		private final Trait trait;
+		private final int traitCount;
+		private final AmfValue value;
+
+		protected Deferred(AmfInput input, AmfValue value, Trait trait, int denseSize) {
+			this.input = input;
+			this.value = value;
+			this.trait = trait;
+			this.denseSize = denseSize;
+			this.position = input.buffer.position();
+			this.stringCount = input.stringCount;
+			this.traitCount = input.traitCount;
+		}
+
+		@Override
+		public void run() {
+			try (AmfInput replay = new AmfInput(input, position, stringCount, traitCount)) {
+				replay.readBody(value, trait, denseSize);
+			} catch (IOException | UnexpectedDataException e) {
+				throw new IllegalStateException("Could not load the deferred value.", e);
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * The lazy input a file was read from, which lets a writer copy the data of
+	 * objects and arrays that were never loaded instead of writing them again.
+	 * </p>
+	 * <p>
+	 * Copied data may hold references into the string, trait and reference tables,
+	 * so it is only copied while everything written before it has added the same
+	 * entries to the tables as the input did. The writer reports each entry it adds,
+	 * and once one differs nothing more is copied. An object or array is also not
+	 * copied if it holds a value that is referenced from elsewhere, as that value
+	 * may have been changed by way of the other reference.
+	 * </p>
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class Origin {
+		/**
+		 * Finds the lazy input the given value was read from, by way of the first
+		 * object or array in it that has yet to be loaded.
+		 * 
+		 * @return the input, or null if there is no such object or array.
+		 */
+		protected static AmfInput find(Collection<AmfValue> values) {
+			Map<AmfValue, Boolean> visited = new IdentityHashMap<AmfValue, Boolean>();
+			List<AmfValue> stack = new ArrayList<AmfValue>(values);
+			while (!stack.isEmpty()) {
+				AmfValue value = stack.remove(stack.size() - 1);
+				if (value == null || visited.put(value, Boolean.TRUE) != null) {
+					continue;
+				}
+				Runnable loader = null;
+				switch (value.getType()) {
+				case Array:
+					AmfArray array = (AmfArray) value;
+					loader = array.getLoader();
+					if (loader == null) {
+						stack.addAll(array.getAssociative().values());
+						stack.addAll(array.getDense());
+					}
+					break;
+				case Dictionary:
+					stack.addAll(((AmfDictionary) value).keySet());
+					stack.addAll(((AmfDictionary) value).values());
+					break;
+				case Object:
+					AmfObject obj = (AmfObject) value;
+					loader = obj.getLoader();
+					if (loader == null) {
+						stack.addAll(obj.getSealedMap().values());
+						stack.addAll(obj.getDynamicMap().values());
+					}
+					break;
+				case VectorGeneric:
+					stack.addAll((AmfVector.Generic) value);
+					break;
+				default:
+					break;
+				}
+				if (loader instanceof Deferred) {
+					return ((Deferred) loader).input;
+				}
+			}
+			return null;
+		}
+
+		private boolean diverged;
+		private Map<AmfValue, Integer> indices;
+		private AmfInput input;
+		private List<Span> spans;
+
+		protected Origin(AmfInput input) {
+			this.input = input;
+			// every value added to the reference table has a span, in the order they begin
+			this.spans = input.spans.values();
+			this.spans.sort((a, b) -> Integer.compare(a.start, b.start));
+			this.indices = new IdentityHashMap<AmfValue, Integer>();
+			for (int i = 0; i < spans.size(); ++i) {
+				indices.put(spans.get(i).value, i);
+			}
+		}
+
+		/**
+		 * Copies the data of the given object or array to the output, if it was never
+		 * loaded and the tables of the output match those of the input where it
+		 * begins. The entries the data adds to the tables are added to those of the
+		 * output as well. The type marker has already been written.
+		 * 
+		 * @return true if the data was copied, false if the value must be written.
+		 */
+		protected boolean copy(AmfOutput output, AmfValue value) throws IOException {
+			if (diverged) {
+				return false;
+			}
+			Runnable loader = value instanceof AmfObject ? ((AmfObject) value).getLoader()
+					: ((AmfArray) value).getLoader();
+			if (!(loader instanceof Deferred) || ((Deferred) loader).input.spans != input.spans) {
+				return false;
+			}
+			Integer index = indices.get(value);
+			if (index == null) {
+				return false;
+			}
+			Span span = spans.get(index);
+			if (output.stringCount != span.startStringCount || output.traitTable.size() != span.startTraitCount
+					|| output.referenceTable.size() != index) {
+				return false;
+			}
+			int end = index + 1;
+			for (; end < spans.size() && spans.get(end).start < span.end; ++end) {
+				AmfValue inner = spans.get(end).value;
+				if (inner instanceof AmfObject || inner instanceof AmfArray) {
+					// only changed by way of another reference, which loads it first
+					Runnable innerLoader = inner instanceof AmfObject ? ((AmfObject) inner).getLoader()
+							: ((AmfArray) inner).getLoader();
+					if (innerLoader == null) {
+						return false;
+					}
+				} else if (input.referenced.contains(inner)) {
+					return false;
+				}
+			}
+
+			input.buffer.copy(span.start, span.end, output.out);
+
+			for (int i = span.startStringCount; i < span.stringCount; ++i) {
+				output.stringTable.putIfAbsent(input.getString(i), i);
+			}
+			output.stringCount = span.stringCount;
+			for (int i = span.startTraitCount; i < span.traitCount; ++i) {
+				output.traitTable.add(input.traitTable.get(i));
+			}
+			for (int i = index; i < end; ++i) {
+				AmfValue inner = spans.get(i).value;
+				if (inner instanceof AmfObject || inner instanceof AmfArray) {
+					output.referenceTable.reserve();
+				} else {
+					output.referenceTable.add(inner);
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Checks the value the output added to the reference table at the given
+		 * index against the input.
+		 */
+		protected void matchReference(int index, AmfValue value) {
+			if (index >= spans.size() || spans.get(index).value != value) {
+				diverged = true;
+			}
+		}
+
+		/**
+		 * Checks the string the output added to the string table at the given index
+		 * against the input.
+		 */
+		protected void matchString(int index, String str) {
+			if (diverged) {
+				return;
+			}
+			if (index >= input.stringTable.size() || !input.getString(index).equals(str)) {
+				diverged = true;
+			}
+		}
+
+		/**
+		 * Checks the trait the output added to the trait table at the given index
+		 * against the input.
+		 */
+		protected void matchTrait(int index, Trait trait) {
+			if (index >= input.traitTable.size() || !trait.equals(input.traitTable.get(index))) {
+				diverged = true;
+			}
+		}
+	}
+
+	/**
+	 * Where a value that was read from a lazy input begins and ends, along with
+	 * the state of the string and trait tables at both.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class Span {
+		protected int end;
+		protected int start;
+		protected int startStringCount;
+		protected int startTraitCount;
+		protected int stringCount;
+		protected int traitCount;
+		protected AmfValue value;
+
+		protected Span(AmfValue value, int start, int end, int startStringCount, int startTraitCount,
+				int stringCount, int traitCount) {
+			this.value = value;
+			this.start = start;
+			this.end = end;
+			this.startStringCount = startStringCount;
+			this.startTraitCount = startTraitCount;
+			this.stringCount = stringCount;
+			this.traitCount = traitCount;
+		}
+	}
+
+	/**
+	 * The spans of the values read from a lazy input, found by the position they
+	 * start at. This is an open addressed table of the spans themselves, so no
+	 * boxed position or map entry is held for each value.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class SpanTable {
+		private static int slot(int start, int mask) {
+			int h = start * 0x9E3779B9;
+			return (h ^ (h >>> 16)) & mask;
+		}
+
+		private int size;
+		private Span[] table;
+
+		protected SpanTable() {
+			table = new Span[64];
+		}
+
+		/**
+		 * Removes every span from the table, keeping its capacity.
+		 */
+		protected void clear() {
+			Arrays.fill(table, null);
+			size = 0;
+		}
+
+		/**
+		 * Gets the span that starts at the given position.
+		 * 
+		 * @param start
+		 *            the position the span starts at
+		 * @return the span, or null if there is none
+		 */
+		protected Span get(int start) {
+			int mask = table.length - 1;
+			for (int i = slot(start, mask);; i = (i + 1) & mask) {
+				Span span = table[i];
+				if (span == null || span.start == start) {
+					return span;
+				}
+			}
+		}
+
+		private boolean insert(Span span) {
+			int mask = table.length - 1;
+			int i = slot(span.start, mask);
+			while (table[i] != null) {
+				if (table[i].start == span.start) {
+					table[i] = span;
+					return false;
+				}
+				i = (i + 1) & mask;
+			}
+			table[i] = span;
+			return true;
+		}
+
+		/**
+		 * Adds the given span, replacing any that starts at the same position.
+		 * 
+		 * @param span
+		 *            the span to add
+		 */
+		protected void put(Span span) {
+			if ((size + 1) * 2 > table.length) {
+				Span[] old = table;
+				table = new Span[old.length << 1];
+				for (Span s : old) {
+					if (s != null) {
+						insert(s);
+					}
+				}
+			}
+			if (insert(span)) {
+				++size;
+			}
+		}
+
+		/**
+		 * Gets every span in the table, in no particular order.
+		 * 
+		 * @return the spans
+		 */
+		protected List<Span> values() {
+			List<Span> result = new ArrayList<Span>(size);
+			for (Span span : table) {
+				if (span != null) {
+					result.add(span);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Where each string of a lazy input that has not been decoded yet is in the
+	 * input, by its index in the string table. Only the position and length of
+	 * each string are kept, and a view of the input is made when it is needed.
+	 * 
+	 * @author Robert Maupin
+	 */
+	private static class PendingStrings {
+		private int[] data;
+
+		protected PendingStrings() {
+			data = new int[64];
+		}
+
+		/**
+		 * Gets a view of the string at the given index.
+		 * 
+		 * @param buffer
+		 *            the input the string was read from
+		 * @param index
+		 *            the index of the string
+		 * @return the view of its UTF-8 data
+		 */
+		protected ByteBuffer get(BufferInput buffer, int index) {
+			return buffer.view(data[index << 1], data[(index << 1) + 1]);
+		}
+
+		/**
+		 * Records where the string at the given index is in the input.
+		 * 
+		 * @param index
+		 *            the index of the string
+		 * @param start
+		 *            the position the string starts at
+		 * @param length
+		 *            the length of the string in bytes
+		 */
+		protected void put(int index, int start, int length) {
+			if ((index << 1) + 1 >= data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length << 1, (index + 1) << 1));
+			}
+			data[index << 1] = start;
+			data[(index << 1) + 1] = length;
+		}
+	}
+
+	private static class Header {
+		protected int countIndexLength;
+		protected boolean isReference;
+
+		protected Header(int u29) {
+			this.countIndexLength = u29;
+			this.isReference = !readNextBit();
+		}
+
+		/**
+		 * Reads the next bit and reduces the countIndexLength by a bit.
+		 * 
+		 * @return
+		 */
+		protected boolean readNextBit() {
+			boolean result = (countIndexLength & 1) == 1;
+			countIndexLength >>= 1;
+			return result;
+		}
+	}
+
+	/**
+	 * <p>
+	 * A reusable reader and writer, for when many values or files are read or
+	 * written one after another. The tables and buffers are cleared between calls
+	 * but keep their capacity, so little more than the values themselves is
+	 * allocated per call.
+	 * </p>
+	 * <p>
+	 * A codec is not thread safe. Each thread should have its own, such as by way
+	 * of a ThreadLocal, or take one from a pool.
+	 * </p>
+	 * 
+	 * @author Robert Maupin
+	 */
+	public static class Codec {
+		private AmfOutput channelOutput;
+		private byte[] data;
+		private AmfInput input;
+		private AmfOutput output;
+
+		/**
+		 * Creates a codec that uses the given ExternalizableFactorys for every call.
+		 * 
+		 * @param ext
+		 *            The ExternalizableFactorys to use, if any.
+		 */
+		public Codec(ExternalizableFactory... ext) {
+			data = new byte[8192];
+			input = new AmfInput(ByteBuffer.wrap(data, 0, 0), false, false);
+			output = new AmfOutput((OutputStream) null, false);
+			channelOutput = new AmfOutput(new ChannelOutput(ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE)), false);
+			for (ExternalizableFactory factory : ext) {
+				input.addExternalizableFactory(factory);
+				output.addExternalizableFactory(factory);
+				channelOutput.addExternalizableFactory(factory);
+			}
+		}
+
+		/**
+		 * Reads the rest of the given stream into the reused data array, then closes
+		 * it.
+		 */
+		private ByteBuffer fill(InputStream in) throws IOException {
+			int length = 0;
+			try (InputStream stream = in) {
+				int read;
+				while ((read = stream.read(data, length, data.length - length)) != -1) {
+					length += read;
+					if (length == data.length) {
+						data = Arrays.copyOf(data, data.length << 1);
+					}
+				}
+			}
+			return ByteBuffer.wrap(data, 0, length);
+		}
+
+		/**
+		 * Reads a serialized AmfValue from the given input stream, then closes it.
+		 * 
+		 * @param in
+		 *            The input stream to read from.
+		 * @return The AmfValue read.
+		 * @throws IOException
+		 *             if the program encountered an I/O error during reading.
+		 * @throws UnexpectedDataException
+		 *             if invalid data was found during the read, often occurs with an
+		 *             invalid or unsupported format.
+		 */
+		public AmfValue read(InputStream in) throws IOException, UnexpectedDataException {
+			return read(fill(in));
+		}
+
+		/**
+		 * Reads a serialized AmfValue from the remaining data in the given buffer. The
+		 * position of the buffer is not changed.
+		 * 
+		 * @param buffer
+		 *            The buffer to read from.
+		 * @return The AmfValue read.
+		 * @throws IOException
+		 *             if the program encountered an I/O error during reading.
+		 * @throws UnexpectedDataException
+		 *             if invalid data was found during the read, often occurs with an
+		 *             invalid or unsupported format.
+		 */
+		public AmfValue read(ByteBuffer buffer) throws IOException, UnexpectedDataException {
+			input.reset(buffer, false);
+			return input.next().value();
+		}
+
+		/**
+		 * Reads AMF from the given input stream designating an SOL file, then closes
+		 * it.
+		 * 
+		 * @param in
+		 *            The input stream to read from.
+		 * @return The AmfFile read.
+		 * @throws IOException
+		 *             if the program encountered an I/O error during reading.
+		 * @throws UnexpectedDataException
+		 *             if invalid data was found during the read, often occurs with an
+		 *             invalid or unsupported format.
+		 */
+		public AmfFile readFile(InputStream in) throws IOException, UnexpectedDataException {
+			return readFile(fill(in));
+		}
+
+		/**
+		 * Reads AMF from the remaining data in the given buffer designating an SOL
+		 * file. The position of the buffer is not changed.
+		 * 
+		 * @param buffer
+		 *            The buffer to read from.
+		 * @return The AmfFile read.
+		 * @throws IOException
+		 *             if the program encountered an I/O error during reading.
+		 * @throws UnexpectedDataException
+		 *             if invalid data was found during the read, often occurs with an
+		 *             invalid or unsupported format.
+		 */
+		public AmfFile readFile(ByteBuffer buffer) throws IOException, UnexpectedDataException {
+			input.reset(buffer, true);
+			AmfFile file = new AmfFile();
+			file.setName(input.getName());
+			while (input.hasNext()) {
+				AmfEntry e = input.next();
+				file.put(e.key(), e.value());
+			}
+			return file;
+		}
+
+		/**
+		 * Sets if the undefined, null, boolean and small integer values read by this
+		 * codec should be shared instances, instead of new ones. This is off by
+		 * default.
+		 * 
+		 * @param shared
+		 *            if shared instances should be read.
+		 * @see AmfPrimitive#isShared()
+		 */
+		public void setShared(boolean shared) {
+			input.setShared(shared);
+		}
+
+		/**
+		 * Sets the pool that strings read by this codec are taken from. There is no
+		 * pool by default.
+		 * 
+		 * @param pool
+		 *            the pool to use, or null to not use one.
+		 */
+		public void setStringPool(StringPool pool) {
+			input.setStringPool(pool);
+		}
+
+		/**
+		 * Sets if the encoded form of each string written by this codec should be
+		 * kept on the AmfString. Writing the same tree again then copies the strings
+		 * instead of encoding them, at the cost of holding their encoded data. This is
+		 * off by default, though strings read lazily always keep the data they were
+		 * read from.
+		 * 
+		 * @param cacheStrings
+		 *            if the encoded strings should be kept.
+		 */
+		public void setCacheStrings(boolean cacheStrings) {
+			output.setCacheStrings(cacheStrings);
+			channelOutput.setCacheStrings(cacheStrings);
+		}
+
+		/**
+		 * Clears the tables and buffers of this codec, keeping their capacity. Every
+		 * call does this first, but it can be used to let go of the last values read
+		 * or written.
+		 */
+		public void reset() {
+			input.reset(ByteBuffer.wrap(data, 0, 0), false);
+			output.reset((OutputStream) null, false);
+			channelOutput.clear(false);
+		}
+
+		/**
+		 * Writes a serialized AmfValue to the given output stream, then closes it.
+		 * 
+		 * @param amf
+		 *            The AmfValue to write.
+		 * @param out
+		 *            The output stream to write to.
+		 * @throws IOException
+		 *             if the program encountered an I/O error during writing.
+		 */
+		public void write(AmfValue amf, OutputStream out) throws IOException {
+			output.reset(out, false);
+			try {
+				output.writeValue(amf);
+				output.flush();
+			} finally {
+				out.close();
+			}
+		}
+
+		/**
+		 * Writes AMF to the given output stream as an SOL file, then closes it.
+		 * 
+		 * @param amf
+		 *            The AmfFile to write.
+		 * @param out
+		 *            The output stream to write to.
+		 * @throws IOException
+		 *             if the program encountered an I/O error during writing.
+		 */
+		public void writeFile(AmfFile amf, OutputStream out) throws IOException {
+			output.reset(out, true);
+			try {
+				output.setName(amf.getName());
+				for (String key : amf.keySet()) {
+					output.writeEntry(key, amf.get(key));
+				}
+				output.flush();
+			} finally {
+				out.close();
+			}
+		}
+
+		/**
+		 * Writes AMF to the given channel as an SOL file, starting at its current
+		 * position, then closes it.
+		 * 
+		 * @param amf
+		 *            The AmfFile to write.
+		 * @param channel
+		 *            The channel to write to.
+		 * @throws IOException
+		 *             if the program encountered an I/O error during writing.
+		 */
+		public void writeFile(AmfFile amf, FileChannel channel) throws IOException {
+			try {
+				channelOutput.reset(channel, true);
+				channelOutput.setName(amf.getName());
+				for (String key : amf.keySet()) {
+					channelOutput.writeEntry(key, amf.get(key));
+				}
+				channelOutput.flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * A bounded pool of decoded strings, keyed by their UTF-8 data. Readers that
+	 * share a pool look up each short string in it before decoding it, so names
+	 * such as property keys that repeat across many files are only held once.
+	 * </p>
+	 * <p>
+	 * The pool is a fixed size table where each string has one slot, a string that
+	 * lands on a taken slot replaces the one in it. A pool is thread safe and may be
+	 * shared by any number of readers.
+	 * </p>
+	 * 
+	 * @author Robert Maupin
+	 */
+	public static final class StringPool {
+		/**
+		 * A pooled string and its data. This never changes once made, so it can be
+		 * handed between threads through the table.
+		 */
+		private static final class Entry {
+			private final byte[] data;
+			private final int hash;
+			private final String value;
+
+			private Entry(byte[] data, int hash, String value) {
+				this.data = data;
+				this.hash = hash;
+				this.value = value;
+			}
+
+			private boolean matches(int hash, byte[] data, int offset, int length) {
+				if (this.hash != hash || this.data.length != length) {
+					return false;
+				}
+				for (int i = 0; i < length; ++i) {
+					if (this.data[i] != data[offset + i]) {
+						return false;
+					}
+				}
+				return true;
+			}
+		}
+
+		private final Entry[] entries;
+		private final int maxLength;
+
+		/**
+		 * Creates a pool of 4096 strings of up to 64 bytes each.
+		 */
+		public StringPool() {
+			this(4096, 64);
+		}
+
+		/**
+		 * Creates a pool with the given bounds.
+		 * 
+		 * @param capacity
+		 *            The number of strings the pool holds, rounded up to a power of
+		 *            two.
+		 * @param maxLength
+		 *            The length in bytes of the longest string that is pooled. Longer
+		 *            strings are always decoded.
+		 */
+		public StringPool(int capacity, int maxLength) {
+			if (capacity < 1 || maxLength < 0) {
+				throw new IllegalArgumentException("The capacity must be positive and the length not negative.");
+			}
+			int size = Integer.highestOneBit(capacity);
+			if (size < capacity) {
+				size <<= 1;
+			}
+			this.entries = new Entry[size];
+			this.maxLength = maxLength;
+		}
+
+		/**
+		 * Removes every string from this pool.
+		 */
+		public void clear() {
+			Arrays.fill(entries, null);
+		}
+
+		/**
+		 * Gets the pooled string with the given UTF-8 data, decoding and pooling it if
+		 * there is none.
+		 */
+		String get(byte[] data, int offset, int length) {
+			int hash = 1;
+			for (int i = 0; i < length; ++i) {
+				hash = 31 * hash + data[offset + i];
+			}
+			int slot = (hash ^ (hash >>> 16)) & (entries.length - 1);
+			Entry entry = entries[slot];
+			if (entry != null && entry.matches(hash, data, offset, length)) {
+				return entry.value;
+			}
+			String value = AmfString.decode(data, offset, length);
+			entries[slot] = new Entry(Arrays.copyOfRange(data, offset, offset + length), hash, value);
+			return value;
+		}
+
+		/**
+		 * Gets the length in bytes of the longest string that is pooled.
+		 * 
+		 * @return The longest pooled length.
+		 */
+		public int getMaxLength() {
+			return maxLength;
+		}
+	}
+
+	private static final int CHANNEL_BUFFER_SIZE = 65536;
+
+	/**
+	 * The direct buffer of each thread that writes files to a channel.
+	 */
+	private static final ThreadLocal<ByteBuffer> channelBuffers = ThreadLocal
+			.withInitial(() -> ByteBuffer.allocateDirect(CHANNEL_BUFFER_SIZE));
+	
+	/**
+	 * Determines if the given file is a shared object, or if it is a serialized value.
+	 * @param file file to check
+	 * @return true if shared object, false otherwise.
+	 * @throws IOException 
+	 * @throws FileNotFoundException 
+	 */
+	public static final boolean isAmfFile(File file) throws FileNotFoundException, IOException {
+		//starts with 0xA (.tits file)
+		//starts with 0x0 (.sol file)
+		try(FileInputStream fis = new FileInputStream(file)) {
+			if(fis.read() != 0x0) {
+				return false;
+			}
+			if(fis.read() != 0xBF) {
+				return false;
+			}
+			fis.skip(4);
+			if(fis.read() != 'T') {
+				return false;
+			}
+			if(fis.read() != 'C') {
+				return false;
+			}
+			if(fis.read() != 'S') {
+				return false;
+			}
+			if(fis.read() != 'O') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a serialized AmfValue from the given file.
+	 * 
+	 * @param file
+	 *            The file to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfValue read.
+	 * @throws FileNotFoundException
+	 *             if the file was not found
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final AmfValue read(File file, ExternalizableFactory... ext)
+			throws FileNotFoundException, IOException, UnexpectedDataException {
+		return read(new FileInputStream(file), ext);
+	}
+
+	/**
+	 * Reads a serialized AmfValue from the given input stream.
+	 * 
+	 * @param input
+	 *            The input stream to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfValue read.
+	 * @throws FileNotFoundException
+	 *             if the file was not found
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final AmfValue read(InputStream input, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		AmfValue value = null;
+		try (AmfInput in = new AmfInput(input, false)) {
+			for (ExternalizableFactory factory : ext) {
+				in.addExternalizableFactory(factory);
+			}
+			value = in.next().value();
+		}
+		return value;
+	}
+
+	/**
+	 * Reads a serialized AmfValue from the remaining data in the given buffer,
+	 * such as one mapped from a file with
+	 * {@link java.nio.channels.FileChannel#map}. The position of the buffer is not
+	 * changed.
+	 * 
+	 * @param buffer
+	 *            The buffer to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfValue read.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final AmfValue read(ByteBuffer buffer, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		AmfValue value = null;
+		try (AmfInput in = new AmfInput(buffer, false, false)) {
+			for (ExternalizableFactory factory : ext) {
+				in.addExternalizableFactory(factory);
+			}
+			value = in.next().value();
+		}
+		return value;
+	}
+
+	/**
+	 * Reads AMF from the given SOL file.
+	 * 
+	 * @param file
+	 *            The file to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws FileNotFoundException
+	 *             if the file was not found
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final AmfFile readFile(File file, ExternalizableFactory... ext)
+			throws FileNotFoundException, IOException, UnexpectedDataException {
+		return readFile(new FileInputStream(file), ext);
+	}
+
+	/**
+	 * Reads AMF from the given input stream designating an SOL file.
+	 * 
+	 * @param input
+	 *            The input stream to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final AmfFile readFile(InputStream input, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		AmfFile file = null;
+		try (AmfInput in = new AmfInput(input, true)) {
+			for (ExternalizableFactory factory : ext) {
+				in.addExternalizableFactory(factory);
+			}
+			file = new AmfFile();
+			file.setName(in.getName());
+			while (in.hasNext()) {
+				AmfEntry e = in.next();
+				file.put(e.key(), e.value());
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Reads a serialized AmfValue from the given file, reporting it to the given
+	 * handler instead of building it.
+	 * 
+	 * @param file
+	 *            The file to read from.
+	 * @param handler
+	 *            The handler to report the value to.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @throws FileNotFoundException
+	 *             if the file was not found
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final void scan(File file, AmfHandler handler, ExternalizableFactory... ext)
+			throws FileNotFoundException, IOException, UnexpectedDataException {
+		scan(new FileInputStream(file), handler, ext);
+	}
+
+	/**
+	 * Reads a serialized AmfValue from the given input stream, reporting it to the
+	 * given handler instead of building it.
+	 * 
+	 * @param input
+	 *            The input stream to read from.
+	 * @param handler
+	 *            The handler to report the value to.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final void scan(InputStream input, AmfHandler handler, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		try (AmfInput in = new AmfInput(input, false)) {
+			for (ExternalizableFactory factory : ext) {
+				in.addExternalizableFactory(factory);
+			}
+			in.scanNext(handler);
+		}
+	}
+
+	/**
+	 * Reads AMF from the given SOL file, reporting each entry to the given handler
+	 * instead of building an AmfFile.
+	 * 
+	 * @param file
+	 *            The file to read from.
+	 * @param handler
+	 *            The handler to report the entries to.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The name stored in the file.
+	 * @throws FileNotFoundException
+	 *             if the file was not found
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final String scanFile(File file, AmfHandler handler, ExternalizableFactory... ext)
+			throws FileNotFoundException, IOException, UnexpectedDataException {
+		return scanFile(new FileInputStream(file), handler, ext);
+	}
+
+	/**
+	 * Reads AMF from the given input stream designating an SOL file, reporting
+	 * each entry to the given handler instead of building an AmfFile. Reading stops
+	 * early if the handler returns false from {@link AmfHandler#endEntry()}.
+	 * 
+	 * @param input
+	 *            The input stream to read from.
+	 * @param handler
+	 *            The handler to report the entries to.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The name stored in the file.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final String scanFile(InputStream input, AmfHandler handler, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		String name = null;
+		try (AmfInput in = new AmfInput(input, true)) {
+			for (ExternalizableFactory factory : ext) {
+				in.addExternalizableFactory(factory);
+			}
+			name = in.getName();
+			while (in.hasNext()) {
+				if (!in.scanNext(handler)) {
+					break;
+				}
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Reads AMF from the remaining data in the given buffer designating an SOL
+	 * file, such as one mapped from a file with
+	 * {@link java.nio.channels.FileChannel#map}. The position of the buffer is not
+	 * changed.
+	 * 
+	 * @param buffer
+	 *            The buffer to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final AmfFile readFile(ByteBuffer buffer, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		AmfFile file = null;
+		try (AmfInput in = new AmfInput(buffer, true, false)) {
+			for (ExternalizableFactory factory : ext) {
+				in.addExternalizableFactory(factory);
+			}
+			file = new AmfFile();
+			file.setName(in.getName());
+			while (in.hasNext()) {
+				AmfEntry e = in.next();
+				file.put(e.key(), e.value());
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Reads AMF from the given SOL file lazily. The contents of objects and arrays
+	 * are not read until they are first used, which is useful when only part of a
+	 * large file will be looked at.
+	 * 
+	 * @param file
+	 *            The file to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws FileNotFoundException
+	 *             if the file was not found
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 * @see #readFileLazy(InputStream, ExternalizableFactory...)
+	 */
+	public static final AmfFile readFileLazy(File file, ExternalizableFactory... ext)
+			throws FileNotFoundException, IOException, UnexpectedDataException {
+		return readFileLazy(new FileInputStream(file), ext);
+	}
+
+	/**
+	 * <p>
+	 * Reads AMF from the given input stream designating an SOL file lazily. The
+	 * entire stream is read into memory, and the position of each object and
+	 * array is recorded. Their contents are only read when they are first used,
+	 * by way of {@link AmfObject#getSealedMap()}, {@link AmfArray#getDense()} and
+	 * the like.
+	 * </p>
+	 * <p>
+	 * The data of the stream is held until every object and array has been
+	 * loaded. Loading is not thread safe, a lazily read file should only be used
+	 * from one thread at a time.
+	 * </p>
+	 * <p>
+	 * As the contents of objects and arrays are read later, data that cannot be
+	 * read inside of them is not found by this method. Instead the method of the
+	 * object or array that first uses its contents throws an
+	 * IllegalStateException, with the IOException or UnexpectedDataException as
+	 * its cause.
+	 * </p>
+	 * 
+	 * @param input
+	 *            The input stream to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final AmfFile readFileLazy(InputStream input, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		return readFileLazy(readBuffer(input), ext);
+	}
+
+	/**
+	 * Reads AMF lazily from the remaining data in the given buffer designating an
+	 * SOL file. The position of the buffer is not changed. Strings and byte arrays
+	 * are read as views of the buffer, and are only decoded or copied when they are
+	 * used or changed. The buffer is held until every object, array, string and
+	 * byte array has been loaded, and must not be changed until then.
+	 * 
+	 * @param buffer
+	 *            The buffer to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 * @see #readFileLazy(InputStream, ExternalizableFactory...)
+	 */
+	public static final AmfFile readFileLazy(ByteBuffer buffer, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		AmfFile file = null;
+		try (AmfInput in = new AmfInput(buffer, true, true)) {
+			for (ExternalizableFactory factory : ext) {
+				in.addExternalizableFactory(factory);
+			}
+			file = new AmfFile();
+			file.setName(in.getName());
+			while (in.hasNext()) {
+				AmfEntry e = in.next();
+				file.put(e.key(), e.value());
 			}
 		}
-
+		return file;
 	}
 
-	private static class Header {
-		protected int countIndexLength;
-		protected boolean isReference;
+	/**
+	 * Reads AMF from the given SOL file, with shared instances for the undefined,
+	 * null, boolean and small integer values.
+	 * 
+	 * @param file
+	 *            The file to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws FileNotFoundException
+	 *             if the file was not found
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 * @see #readFileShared(InputStream, ExternalizableFactory...)
+	 */
+	public static final AmfFile readFileShared(File file, ExternalizableFactory... ext)
+			throws FileNotFoundException, IOException, UnexpectedDataException {
+		return readFileShared(new FileInputStream(file), ext);
+	}
 
-		protected Header(int u29) {
-			this.countIndexLength = u29;
-			this.isReference = !readNextBit();
+	/**
+	 * <p>
+	 * Reads AMF from the given input stream designating an SOL file, with shared
+	 * instances for the undefined, null, boolean and small integer values. Files
+	 * full of flags and zeroes then take far fewer objects.
+	 * </p>
+	 * <p>
+	 * The shared AmfBooleans and AmfIntegers cannot be changed. They must be
+	 * replaced in whatever holds them instead, such as with
+	 * {@link AmfUtils#replace(AmfFile, String, AmfValue)}.
+	 * </p>
+	 * 
+	 * @param input
+	 *            The input stream to read from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 * @see AmfPrimitive#isShared()
+	 */
+	public static final AmfFile readFileShared(InputStream input, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		AmfFile file = null;
+		try (AmfInput in = new AmfInput(input, true)) {
+			for (ExternalizableFactory factory : ext) {
+				in.addExternalizableFactory(factory);
+			}
+			in.setShared(true);
+			file = new AmfFile();
+			file.setName(in.getName());
+			while (in.hasNext()) {
+				AmfEntry e = in.next();
+				file.put(e.key(), e.value());
+			}
 		}
+		return file;
+	}
 
-		/**
-		 * Reads the next bit and reduces the countIndexLength by a bit.
-		 * 
-		 * @return
-		 */
-		protected boolean readNextBit() {
-			boolean result = (countIndexLength & 1) == 1;
-			countIndexLength >>= 1;
-			return result;
-		}
+	/**
+	 * Reads AMF from the given SOL file, taking short strings from the given pool.
+	 * 
+	 * @param file
+	 *            The file to read from.
+	 * @param pool
+	 *            The pool to take strings from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws FileNotFoundException
+	 *             if the file was not found
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 * @see #readFile(InputStream, StringPool, ExternalizableFactory...)
+	 */
+	public static final AmfFile readFile(File file, StringPool pool, ExternalizableFactory... ext)
+			throws FileNotFoundException, IOException, UnexpectedDataException {
+		return readFile(new FileInputStream(file), pool, ext);
 	}
-	
+
 	/**
-	 * Determines if the given file is a shared object, or if it is a serialized value.
-	 * @param file file to check
-	 * @return true if shared object, false otherwise.
-	 * @throws IOException 
-	 * @throws FileNotFoundException 
+	 * Reads AMF from the given input stream designating an SOL file, taking short
+	 * strings from the given pool. When many files are held at once, reading them
+	 * all with one pool lets their keys and common values share one instance.
+	 * 
+	 * @param input
+	 *            The input stream to read from.
+	 * @param pool
+	 *            The pool to take strings from.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
 	 */
-	public static final boolean isAmfFile(File file) throws FileNotFoundException, IOException {
-		//starts with 0xA (.tits file)
-		//starts with 0x0 (.sol file)
-		try(FileInputStream fis = new FileInputStream(file)) {
-			if(fis.read() != 0x0) {
-				return false;
-			}
-			if(fis.read() != 0xBF) {
-				return false;
-			}
-			fis.skip(4);
-			if(fis.read() != 'T') {
-				return false;
-			}
-			if(fis.read() != 'C') {
-				return false;
-			}
-			if(fis.read() != 'S') {
-				return false;
+	public static final AmfFile readFile(InputStream input, StringPool pool, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		AmfFile file = null;
+		try (AmfInput in = new AmfInput(input, true)) {
+			for (ExternalizableFactory factory : ext) {
+				in.addExternalizableFactory(factory);
 			}
-			if(fis.read() != 'O') {
-				return false;
+			in.setStringPool(pool);
+			file = new AmfFile();
+			file.setName(in.getName());
+			while (in.hasNext()) {
+				AmfEntry e = in.next();
+				file.put(e.key(), e.value());
 			}
 		}
-		return true;
+		return file;
 	}
 
 	/**
-	 * Reads a serialized AmfValue from the given file.
+	 * Reads AMF from the given SOL file, reading the entries in parallel on the
+	 * common pool.
 	 * 
 	 * @param file
 	 *            The file to read from.
 	 * @param ext
 	 *            The ExternalizableFactorys to use, if any.
-	 * @return The AmfValue read.
+	 * @return The AmfFile read.
 	 * @throws FileNotFoundException
 	 *             if the file was not found
 	 * @throws IOException
@@ -1170,48 +4121,88 @@ public class AmfIO {
 	 * @throws UnexpectedDataException
 	 *             if invalid data was found during the read, often occurs with an
 	 *             invalid or unsupported format.
+	 * @see #readFileParallel(ByteBuffer, ForkJoinPool, ExternalizableFactory...)
 	 */
-	public static final AmfValue read(File file, ExternalizableFactory... ext)
+	public static final AmfFile readFileParallel(File file, ExternalizableFactory... ext)
 			throws FileNotFoundException, IOException, UnexpectedDataException {
-		return read(new FileInputStream(file), ext);
+		return readFileParallel(new FileInputStream(file), ext);
 	}
 
 	/**
-	 * Reads a serialized AmfValue from the given input stream.
+	 * Reads AMF from the given input stream designating an SOL file, reading the
+	 * entries in parallel on the common pool. The entire stream is read into
+	 * memory first.
 	 * 
 	 * @param input
 	 *            The input stream to read from.
 	 * @param ext
 	 *            The ExternalizableFactorys to use, if any.
-	 * @return The AmfValue read.
-	 * @throws FileNotFoundException
-	 *             if the file was not found
+	 * @return The AmfFile read.
 	 * @throws IOException
 	 *             if the program encountered an I/O error during reading.
 	 * @throws UnexpectedDataException
 	 *             if invalid data was found during the read, often occurs with an
 	 *             invalid or unsupported format.
+	 * @see #readFileParallel(ByteBuffer, ForkJoinPool, ExternalizableFactory...)
 	 */
-	public static final AmfValue read(InputStream input, ExternalizableFactory... ext)
+	public static final AmfFile readFileParallel(InputStream input, ExternalizableFactory... ext)
 			throws IOException, UnexpectedDataException {
-		AmfValue value = null;
-		try (AmfInput in = new AmfInput(input, false)) {
+		return readFileParallel(readBuffer(input), ForkJoinPool.commonPool(), ext);
+	}
+
+	/**
+	 * <p>
+	 * Reads AMF from the remaining data in the given buffer designating an SOL
+	 * file, reading the entries in parallel on the given pool. The position of the
+	 * buffer is not changed, and it must not be changed during the read.
+	 * </p>
+	 * <p>
+	 * The entries are first walked over to find where each value begins, along
+	 * with the state of the string, trait and reference tables there. The values
+	 * are then read on the pool. An entry that references a value of an earlier
+	 * entry waits for that entry, so files with many large entries gain the most.
+	 * The ExternalizableFactorys may be used from several threads at once.
+	 * </p>
+	 * 
+	 * @param buffer
+	 *            The buffer to read from.
+	 * @param pool
+	 *            The pool to read the entries on.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @return The AmfFile read.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during reading.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the read, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final AmfFile readFileParallel(ByteBuffer buffer, ForkJoinPool pool, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		AmfFile file = null;
+		try (AmfInput in = new AmfInput(buffer, true, false)) {
 			for (ExternalizableFactory factory : ext) {
 				in.addExternalizableFactory(factory);
 			}
-			value = in.next().value();
+			file = new AmfFile();
+			file.setName(in.getName());
+			in.readParallel(file, pool);
 		}
-		return value;
+		return file;
 	}
 
 	/**
-	 * Reads AMF from the given SOL file.
+	 * Reads only the entries with the given keys from the given SOL file. The
+	 * values of all other entries are skipped over, and reading stops as soon as
+	 * every key has been found.
 	 * 
 	 * @param file
 	 *            The file to read from.
+	 * @param keys
+	 *            The keys of the entries to read.
 	 * @param ext
 	 *            The ExternalizableFactorys to use, if any.
-	 * @return The AmfFile read.
+	 * @return The AmfFile read, containing only the requested entries that exist.
 	 * @throws FileNotFoundException
 	 *             if the file was not found
 	 * @throws IOException
@@ -1220,42 +4211,65 @@ public class AmfIO {
 	 *             if invalid data was found during the read, often occurs with an
 	 *             invalid or unsupported format.
 	 */
-	public static final AmfFile readFile(File file, ExternalizableFactory... ext)
+	public static final AmfFile readEntries(File file, Set<String> keys, ExternalizableFactory... ext)
 			throws FileNotFoundException, IOException, UnexpectedDataException {
-		return readFile(new FileInputStream(file), ext);
+		return readEntries(new FileInputStream(file), keys, ext);
 	}
 
 	/**
-	 * Reads AMF from the given input stream designating an SOL file.
+	 * Reads only the entries with the given keys from the given input stream
+	 * designating an SOL file. The values of all other entries are skipped over,
+	 * and reading stops as soon as every key has been found. The stream is read
+	 * into memory first, so that a requested value that refers back to a value in
+	 * a skipped entry can have that entry read when the reference is found.
 	 * 
 	 * @param input
 	 *            The input stream to read from.
+	 * @param keys
+	 *            The keys of the entries to read.
 	 * @param ext
 	 *            The ExternalizableFactorys to use, if any.
-	 * @return The AmfFile read.
+	 * @return The AmfFile read, containing only the requested entries that exist.
 	 * @throws IOException
 	 *             if the program encountered an I/O error during reading.
 	 * @throws UnexpectedDataException
 	 *             if invalid data was found during the read, often occurs with an
 	 *             invalid or unsupported format.
 	 */
-	public static final AmfFile readFile(InputStream input, ExternalizableFactory... ext)
+	public static final AmfFile readEntries(InputStream input, Set<String> keys, ExternalizableFactory... ext)
 			throws IOException, UnexpectedDataException {
 		AmfFile file = null;
-		try (AmfInput in = new AmfInput(input, true)) {
+		try (AmfInput in = new AmfInput(readBuffer(input), true, false)) {
 			for (ExternalizableFactory factory : ext) {
 				in.addExternalizableFactory(factory);
 			}
 			file = new AmfFile();
 			file.setName(in.getName());
-			while (in.hasNext()) {
-				AmfEntry e = in.next();
-				file.put(e.key(), e.value());
+			while (file.size() < keys.size() && in.hasNext()) {
+				AmfEntry e = in.next(keys);
+				if (e.value() != null) {
+					file.put(e.key(), e.value());
+				}
 			}
 		}
 		return file;
 	}
 
+	/**
+	 * Reads the rest of the given stream into a buffer, then closes it.
+	 */
+	private static final ByteBuffer readBuffer(InputStream input) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (InputStream in = input) {
+			byte[] chunk = new byte[8192];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				buffer.write(chunk, 0, read);
+			}
+		}
+		return ByteBuffer.wrap(buffer.toByteArray());
+	}
+
 	/**
 	 * Writes a serialized AmfValue to the given file.
 	 * 
@@ -1324,7 +4338,42 @@ public class AmfIO {
 	 */
 	public static final void writeFile(AmfFile amf, File file, ExternalizableFactory... ext)
 			throws FileNotFoundException, IOException, UnexpectedDataException {
-		writeFile(amf, new FileOutputStream(file), ext);
+		writeFile(amf, new FileOutputStream(file).getChannel(), ext);
+	}
+
+	/**
+	 * Writes AMF to the given channel as an SOL file, starting at its current
+	 * position, then closes it. The data is written straight to the channel
+	 * through a direct buffer that each thread reuses, and the header length is
+	 * written in place at the end, so the file is never held in memory as a
+	 * whole.
+	 * 
+	 * @param amf
+	 *            The AMFFile to write.
+	 * @param channel
+	 *            The channel to write to.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during writeing.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the write, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final void writeFile(AmfFile amf, FileChannel channel, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		ChannelOutput target = new ChannelOutput(channelBuffers.get());
+		target.reset(channel);
+		try (AmfOutput out = new AmfOutput(target, true)) {
+			for (ExternalizableFactory factory : ext) {
+				out.addExternalizableFactory(factory);
+			}
+			out.setName(amf.getName());
+			for (String key : amf.keySet()) {
+				AmfValue val = amf.get(key);
+				out.writeEntry(key, val);
+			}
+		}
 	}
 
 	/**
@@ -1357,4 +4406,65 @@ public class AmfIO {
 			}
 		}
 	}
+
+	/**
+	 * Writes an AMFFile that was read with readFileLazy to the given SOL file. The
+	 * data of objects and arrays that were never loaded is copied from what was
+	 * read, for as long as everything written before them matches it, so only
+	 * the parts that were looked at or changed are written again. Changes are not
+	 * tracked, so a loaded object or array is written again even if it is
+	 * unchanged, as is everything after the first difference in the tables.
+	 * Otherwise this is the same as writeFile.
+	 * 
+	 * @param amf
+	 *            The AMFFile to write.
+	 * @param file
+	 *            The file to write to.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @throws FileNotFoundException
+	 *             if the file was not found
+	 * @throws IOException
+	 *             if the program encountered an I/O error during writeing.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the write, often occurs with an
+	 *             invalid or unsupported format.
+	 */
+	public static final void writeFileIncremental(AmfFile amf, File file, ExternalizableFactory... ext)
+			throws FileNotFoundException, IOException, UnexpectedDataException {
+		writeFileIncremental(amf, new FileOutputStream(file), ext);
+	}
+
+	/**
+	 * Writes an AMFFile that was read with readFileLazy to the given output
+	 * stream, copying the data of objects and arrays that were never loaded where
+	 * it can.
+	 * 
+	 * @param amf
+	 *            The AMFFile to write.
+	 * @param output
+	 *            The output stream to write to.
+	 * @param ext
+	 *            The ExternalizableFactorys to use, if any.
+	 * @throws IOException
+	 *             if the program encountered an I/O error during writeing.
+	 * @throws UnexpectedDataException
+	 *             if invalid data was found during the write, often occurs with an
+	 *             invalid or unsupported format.
+	 * @see #writeFileIncremental(AmfFile, File, ExternalizableFactory...)
+	 */
+	public static final void writeFileIncremental(AmfFile amf, OutputStream output, ExternalizableFactory... ext)
+			throws IOException, UnexpectedDataException {
+		try (AmfOutput out = new AmfOutput(output, true)) {
+			for (ExternalizableFactory factory : ext) {
+				out.addExternalizableFactory(factory);
+			}
+			out.setName(amf.getName());
+			out.setOrigin(amf);
+			for (String key : amf.keySet()) {
+				AmfValue val = amf.get(key);
+				out.writeEntry(key, val);
+			}
+		}
+	}
 }
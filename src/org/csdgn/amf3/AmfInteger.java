@@ -28,6 +28,34 @@ package org.csdgn.amf3;
  * @author Robert Maupin
  */
 public class AmfInteger extends AmfPrimitive<Integer> {
+	private static final int SHARED_MINIMUM = -128;
+	private static final int SHARED_MAXIMUM = 1023;
+	private static final AmfInteger[] sharedValues = new AmfInteger[SHARED_MAXIMUM - SHARED_MINIMUM + 1];
+
+	static {
+		for(int i = 0; i < sharedValues.length; ++i) {
+			sharedValues[i] = new AmfInteger(i + SHARED_MINIMUM);
+			sharedValues[i].share();
+		}
+	}
+
+	/**
+	 * Gets a shared AmfInteger with the specified value, if the value is small
+	 * enough to be cached. Otherwise a new AmfInteger is returned. A shared
+	 * AmfInteger cannot be changed.
+	 * 
+	 * @param value
+	 *            The integer value.
+	 * @return An AmfInteger with the value.
+	 * @see #isShared()
+	 */
+	public static AmfInteger shared(int value) {
+		if(value >= SHARED_MINIMUM && value <= SHARED_MAXIMUM) {
+			return sharedValues[value - SHARED_MINIMUM];
+		}
+		return new AmfInteger(value);
+	}
+
 	/**
 	 * Defines an AmfInteger with a value of zero.
 	 */
@@ -27,6 +27,18 @@ package org.csdgn.amf3;
  *
  */
 public class AmfNull implements AmfValue {
+	private static final AmfNull shared = new AmfNull();
+
+	/**
+	 * Gets a shared AmfNull. As an AmfNull has no state, it can be used anywhere
+	 * an AmfNull is needed.
+	 * 
+	 * @return The shared AmfNull.
+	 */
+	public static AmfNull shared() {
+		return shared;
+	}
+
 	@Override
 	public boolean equals(AmfValue value) {
 		if(value.getType() == AmfType.Null) {
@@ -53,6 +65,11 @@ public class AmfNull implements AmfValue {
 		return AmfType.Null;
 	}
 	
+	@Override
+	public int hashCode() {
+		return getType().id;
+	}
+	
 	@Override
 	public String toString() {
 		return "Null[]";
@@ -21,10 +21,19 @@
  */
 package org.csdgn.amf3;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * Associated with the AMF object type. This handles ActionScript Objects and
@@ -35,12 +44,325 @@ import java.util.Map;
  *
  */
 public class AmfObject implements AmfValue {
+	/**
+	 * The layout of the sealed properties of an object, the property names in
+	 * order along with the index of each. Objects read with the same trait share
+	 * one shape and only keep an array of their values. A shared shape is never
+	 * changed, an object copies it before adding or removing a property.
+	 * 
+	 * @author Robert Maupin
+	 */
+	static final class Shape {
+		static final Shape empty = new Shape(Collections.<String>emptyList());
+
+		/**
+		 * Gets the shape of the given trait, which is shared by every object read
+		 * with a SimpleTrait.
+		 */
+		static Shape of(Trait trait) {
+			if(trait instanceof SimpleTrait) {
+				return ((SimpleTrait) trait).getShape();
+			}
+			return new Shape(trait.getProperties());
+		}
+
+		private int hash;
+		private Map<String, Integer> indices;
+		private String[] keys;
+		private List<String> properties;
+		private int size;
+
+		/**
+		 * Creates a shape of the given property names. A repeated name keeps its
+		 * first index.
+		 */
+		Shape(List<String> names) {
+			keys = new String[names.size()];
+			indices = new HashMap<String, Integer>();
+			for(String name : names) {
+				add(name);
+			}
+			properties = new AbstractList<String>() {
+				@Override
+				public String get(int index) {
+					if(index < 0 || index >= size) {
+						throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+					}
+					return keys[index];
+				}
+
+				@Override
+				public int hashCode() {
+					if(hash == 0) {
+						hash = super.hashCode();
+					}
+					return hash;
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+
+		/**
+		 * Adds the given name to the end of this shape, if it is not already in it.
+		 */
+		void add(String name) {
+			if(indices.containsKey(name)) {
+				return;
+			}
+			if(size == keys.length) {
+				keys = Arrays.copyOf(keys, Math.max(4, size << 1));
+			}
+			indices.put(name, size);
+			keys[size++] = name;
+			hash = 0;
+		}
+
+		Shape copy() {
+			return new Shape(properties);
+		}
+
+		/**
+		 * Gets the name at the given index.
+		 */
+		String get(int index) {
+			return keys[index];
+		}
+
+		/**
+		 * Gets the names of this shape, as an unmodifiable list that follows any
+		 * change to it.
+		 */
+		List<String> getProperties() {
+			return properties;
+		}
+
+		/**
+		 * Gets the index of the given name, or -1 if it is not in this shape.
+		 */
+		int indexOf(Object name) {
+			Integer index = indices.get(name);
+			if(index == null) {
+				return -1;
+			}
+			return index;
+		}
+
+		/**
+		 * Removes the name at the given index, moving the names after it down.
+		 */
+		void remove(int index) {
+			indices.remove(keys[index]);
+			System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+			keys[--size] = null;
+			for(int i = index; i < size; ++i) {
+				indices.put(keys[i], i);
+			}
+			hash = 0;
+		}
+
+		int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * A view of the dynamic properties that only creates the map of them once a
+	 * property is added.
+	 */
+	private class DynamicMap extends AbstractMap<String, AmfValue> {
+		@Override
+		public void clear() {
+			if(dynamicMap != null) {
+				dynamicMap.clear();
+			}
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return dynamicMap != null && dynamicMap.containsKey(key);
+		}
+
+		@Override
+		public Set<Entry<String, AmfValue>> entrySet() {
+			if(dynamicMap == null) {
+				return Collections.emptySet();
+			}
+			return dynamicMap.entrySet();
+		}
+
+		@Override
+		public AmfValue get(Object key) {
+			if(dynamicMap == null) {
+				return null;
+			}
+			return dynamicMap.get(key);
+		}
+
+		@Override
+		public AmfValue put(String key, AmfValue value) {
+			if(dynamicMap == null) {
+				dynamicMap = new LinkedHashMap<String, AmfValue>();
+			}
+			return dynamicMap.put(key, value);
+		}
+
+		@Override
+		public AmfValue remove(Object key) {
+			if(dynamicMap == null) {
+				return null;
+			}
+			return dynamicMap.remove(key);
+		}
+
+		@Override
+		public int size() {
+			if(dynamicMap == null) {
+				return 0;
+			}
+			return dynamicMap.size();
+		}
+	}
+
+	/**
+	 * A view of the sealed properties, the names of the shape along with the
+	 * values at the same indices.
+	 */
+	private class SealedMap extends AbstractMap<String, AmfValue> {
+		@Override
+		public void clear() {
+			shape = Shape.empty;
+			ownsShape = false;
+			values = noValues;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return shape.indexOf(key) != -1;
+		}
+
+		@Override
+		public Set<Entry<String, AmfValue>> entrySet() {
+			return new AbstractSet<Entry<String, AmfValue>>() {
+				@Override
+				public Iterator<Entry<String, AmfValue>> iterator() {
+					return new SealedIterator();
+				}
+
+				@Override
+				public int size() {
+					return shape.size();
+				}
+			};
+		}
+
+		@Override
+		public AmfValue get(Object key) {
+			int index = shape.indexOf(key);
+			if(index == -1) {
+				return null;
+			}
+			return values[index];
+		}
+
+		@Override
+		public AmfValue put(String key, AmfValue value) {
+			int index = shape.indexOf(key);
+			if(index != -1) {
+				AmfValue old = values[index];
+				values[index] = value;
+				return old;
+			}
+			ownShape();
+			shape.add(key);
+			if(shape.size() > values.length) {
+				values = Arrays.copyOf(values, Math.max(4, values.length << 1));
+			}
+			values[shape.size() - 1] = value;
+			return null;
+		}
+
+		@Override
+		public AmfValue remove(Object key) {
+			int index = shape.indexOf(key);
+			if(index == -1) {
+				return null;
+			}
+			return removeSealed(index);
+		}
+
+		@Override
+		public int size() {
+			return shape.size();
+		}
+	}
+
+	/**
+	 * Iterates over the sealed properties in order.
+	 */
+	private class SealedIterator implements Iterator<Map.Entry<String, AmfValue>> {
+		private Shape expected = shape;
+		private int expectedSize = shape.size();
+		private int index;
+		private int last = -1;
+
+		@Override
+		public boolean hasNext() {
+			return index < shape.size();
+		}
+
+		@Override
+		public Map.Entry<String, AmfValue> next() {
+			if(expected != shape || expectedSize != shape.size()) {
+				throw new ConcurrentModificationException();
+			}
+			if(index >= shape.size()) {
+				throw new NoSuchElementException();
+			}
+			last = index++;
+			final int entry = last;
+			final String key = shape.get(entry);
+			return new AbstractMap.SimpleEntry<String, AmfValue>(key, values[entry]) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public AmfValue setValue(AmfValue value) {
+					super.setValue(value);
+					AmfValue old = values[entry];
+					values[entry] = value;
+					return old;
+				}
+			};
+		}
+
+		@Override
+		public void remove() {
+			if(last == -1) {
+				throw new IllegalStateException();
+			}
+			removeSealed(last);
+			expected = shape;
+			expectedSize = shape.size();
+			index = last;
+			last = -1;
+		}
+	}
+
+	private static final AmfValue[] noValues = new AmfValue[0];
+
 	private Externalizable customData;
 	private Map<String, AmfValue> dynamicMap;
 	private boolean isDynamic;
 	private boolean isExternalizable;
-	private Map<String, AmfValue> sealedMap;
+	private Runnable loader;
+	private boolean ownsShape;
+	private Shape shape;
+	private Trait trait;
 	private String traitName;
+	private AmfValue[] values;
 
 	/**
 	 * Constructs a AmfObject. By default, the object is not dynamic, is not
@@ -51,8 +373,8 @@ public class AmfObject implements AmfValue {
 		isDynamic = false;
 		isExternalizable = false;
 		traitName = "";
-		sealedMap = new LinkedHashMap<String, AmfValue>();
-		dynamicMap = new LinkedHashMap<String, AmfValue>();
+		shape = Shape.empty;
+		values = noValues;
 		customData = null;
 	}
 	
@@ -64,7 +386,7 @@ public class AmfObject implements AmfValue {
 					&& !traitName.equals(traitName)) {
 				return false;
 			}
-			return obj.sealedMap.equals(sealedMap) && obj.dynamicMap.equals(dynamicMap);
+			return obj.getSealedMap().equals(getSealedMap()) && obj.getDynamicMap().equals(getDynamicMap());
 		}
 		return false;
 	}
@@ -82,6 +404,50 @@ public class AmfObject implements AmfValue {
 		return false;
 	}
 
+	/**
+	 * Hashes the identity of this object. ActionScript dictionaries key objects by
+	 * identity, so equal objects must stay apart as keys of an
+	 * {@link AmfDictionary}. Use {@link AmfUtils#deepHashCode(AmfValue)} to hash
+	 * the properties.
+	 */
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	/**
+	 * Runs the loader if one has been set, which fills in the properties of this
+	 * object the first time they are used. If they cannot be read the loader
+	 * throws an IllegalStateException, and it is not run again.
+	 */
+	private void load() {
+		if(loader != null) {
+			Runnable run = loader;
+			loader = null;
+			run.run();
+		}
+	}
+
+	/**
+	 * Copies the shape if it may be shared, so that it can be changed.
+	 */
+	private void ownShape() {
+		if(!ownsShape) {
+			shape = shape.copy();
+			ownsShape = true;
+		}
+	}
+
+	private AmfValue removeSealed(int index) {
+		ownShape();
+		AmfValue old = values[index];
+		int size = shape.size();
+		shape.remove(index);
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		values[size - 1] = null;
+		return old;
+	}
+
 	/**
 	 * Gets the dynamic map associated with this object. If the object is not
 	 * dynamic, the map will be empty. Unless {@link #isDynamic()} is set
@@ -91,6 +457,10 @@ public class AmfObject implements AmfValue {
 	 * @return The map associated with the dynamic portion of this object.
 	 */
 	public Map<String, AmfValue> getDynamicMap() {
+		load();
+		if(dynamicMap == null) {
+			return new DynamicMap();
+		}
 		return dynamicMap;
 	}
 
@@ -111,17 +481,58 @@ public class AmfObject implements AmfValue {
 	 * @return The map associated with the sealed portion of this object.
 	 */
 	public Map<String, AmfValue> getSealedMap() {
-		return sealedMap;
+		load();
+		return new SealedMap();
+	}
+
+	/**
+	 * Gets the value of the sealed or dynamic property with the given name,
+	 * without making a view of either.
+	 */
+	AmfValue getProperty(String name) {
+		load();
+		int index = shape.indexOf(name);
+		if(index != -1) {
+			return values[index];
+		}
+		return dynamicMap == null ? null : dynamicMap.get(name);
+	}
+
+	/**
+	 * Gets the loader that has yet to fill in the properties of this object, or
+	 * null if they have been filled in.
+	 */
+	Runnable getLoader() {
+		return loader;
+	}
+
+	/**
+	 * Gets the number of sealed properties.
+	 */
+	int getSealedSize() {
+		load();
+		return shape.size();
+	}
+
+	/**
+	 * Gets the value of the sealed property at the given index.
+	 */
+	AmfValue getSealedValue(int index) {
+		load();
+		return values[index];
 	}
 
 	/**
 	 * The trait generated is backed by this object and changes in this object
-	 * will be reflected in the trait.
+	 * will be reflected in the trait. The same trait is returned every time.
 	 * 
 	 * @return the trait associated with this map.
 	 */
 	public Trait getTrait() {
-		return new Trait() {
+		if(trait != null) {
+			return trait;
+		}
+		trait = new Trait() {
 			public boolean equals(Object obj) {
 				if(!(obj instanceof Trait)) {
 					return false;
@@ -140,7 +551,10 @@ public class AmfObject implements AmfValue {
 					return false;
 				}
 				
-				return getProperties().equals(trait.getProperties());
+				// objects read with the same trait share the same list
+				List<String> properties = getProperties();
+				List<String> other = trait.getProperties();
+				return properties == other || properties.equals(other);
 			}
 
 			@Override
@@ -150,9 +564,8 @@ public class AmfObject implements AmfValue {
 
 			@Override
 			public List<String> getProperties() {
-				ArrayList<String> list = new ArrayList<String>();
-				list.addAll(sealedMap.keySet());
-				return list;
+				load();
+				return shape.getProperties();
 			}
 
 			@Override
@@ -165,6 +578,7 @@ public class AmfObject implements AmfValue {
 				return isExternalizable;
 			}
 		};
+		return trait;
 	}
 
 	/**
@@ -214,6 +628,7 @@ public class AmfObject implements AmfValue {
 	 * @param isDynamic true if the object has a dynamic section, false otherwise.
 	 */
 	public void setDynamic(boolean isDynamic) {
+		load();
 		this.isDynamic = isDynamic;
 	}
 
@@ -227,6 +642,7 @@ public class AmfObject implements AmfValue {
 	 *            true to write externalizable data, false otherwise
 	 */
 	public void setExternalizable(boolean isExternalizable) {
+		load();
 		this.isExternalizable = isExternalizable;
 	}
 
@@ -238,9 +654,36 @@ public class AmfObject implements AmfValue {
 	 *            The Externalizable object.
 	 */
 	public void setExternalizableObject(Externalizable ext) {
+		load();
 		this.customData = ext;
 	}
 
+	/**
+	 * Sets the loader used to fill in the properties of this object when they are
+	 * first used. This is used to defer reading the object until it is needed.
+	 * 
+	 * @param loader
+	 *            the loader, or null if there is nothing to load.
+	 */
+	void setLoader(Runnable loader) {
+		this.loader = loader;
+	}
+
+	/**
+	 * Sets the sealed properties of this object to the given shape, which may be
+	 * shared, and the values at its indices.
+	 * 
+	 * @param shape
+	 *            the shape of the properties.
+	 * @param values
+	 *            the values of the properties, at least as long as the shape.
+	 */
+	void setSealed(Shape shape, AmfValue[] values) {
+		this.shape = shape;
+		this.ownsShape = false;
+		this.values = values;
+	}
+
 	/**
 	 * Sets the name of the trait that will be returned from
 	 * {@link Trait#getName()} that is gotten from this classes
@@ -253,35 +696,39 @@ public class AmfObject implements AmfValue {
 		if(traitName == null) {
 			throw new IllegalArgumentException("Trait Name cannot be null.");
 		}
+		load();
 		this.traitName = traitName;
 	}
 	
 	@Override
 	public String toString() {
+		load();
 		StringBuilder buf = new StringBuilder();
 		buf.append("Object:");
 		buf.append(traitName);
 		buf.append("{");
 		boolean first = true;
 		//sealed
-		for(String key : sealedMap.keySet()) {
+		for(int i = 0; i < shape.size(); ++i) {
 			if(!first) {
 				buf.append(",");
 			}
 			first = false;
-			buf.append(key);
+			buf.append(shape.get(i));
 			buf.append("=");
-			buf.append(sealedMap.get(key));
+			buf.append(values[i]);
 		}
 		//dynamic
-		for(String key : dynamicMap.keySet()) {
-			if(!first) {
-				buf.append(",");
+		if(dynamicMap != null) {
+			for(String key : dynamicMap.keySet()) {
+				if(!first) {
+					buf.append(",");
+				}
+				first = false;
+				buf.append(key);
+				buf.append("=");
+				buf.append(dynamicMap.get(key));
 			}
-			first = false;
-			buf.append(key);
-			buf.append("=");
-			buf.append(dynamicMap.get(key));
 		}
 		//don't even try to print custom data
 		buf.append("}");
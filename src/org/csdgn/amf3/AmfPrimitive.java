@@ -27,6 +27,8 @@ package org.csdgn.amf3;
  * @author Robert Maupin
  */
 public abstract class AmfPrimitive<T> implements AmfValue {
+	private int hash;
+	private boolean shared;
 	private T value;
 
 	/**
@@ -65,6 +67,28 @@ public abstract class AmfPrimitive<T> implements AmfValue {
 		return false;
 	}
 	
+	/**
+	 * Hashes the value of this primitive, such that primitives that are equal have
+	 * the same hash. The hash is cached until the value is changed.
+	 */
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if(h == 0) {
+			h = hashValue();
+			hash = h;
+		}
+		return h;
+	}
+
+	/**
+	 * Computes the hash of the current value, without caching it.
+	 */
+	int hashValue() {
+		T v = getValue();
+		return 31 * getType().id + v.hashCode();
+	}
+
 	/**
 	 * Gets the value of this primitive.
 	 * 
@@ -73,6 +97,24 @@ public abstract class AmfPrimitive<T> implements AmfValue {
 	public T getValue() {
 		return value;
 	}
+
+	/**
+	 * Indicates if this primitive is a shared instance, such as those returned by
+	 * {@link AmfInteger#shared(int)}. A shared primitive cannot be changed, it
+	 * must be replaced with a new primitive instead.
+	 * 
+	 * @return true if this primitive is shared, false otherwise.
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * Marks this primitive as shared, after which it cannot be changed.
+	 */
+	void share() {
+		shared = true;
+	}
 	
 	/**
 	 * Sets the value of this primitive.
@@ -81,12 +123,16 @@ public abstract class AmfPrimitive<T> implements AmfValue {
 	 *            The value to set.
 	 * @throws UnsupportedOperationException
 	 *             If the value is null, AmfPrimitives do not support null
-	 *             values.
+	 *             values. Or if this primitive is shared.
 	 */
 	public void setValue(T value) {
 		if(value == null) {
 			throw new UnsupportedOperationException("A primitive value cannot be null.");
 		}
+		if(shared) {
+			throw new UnsupportedOperationException("A shared primitive cannot be changed.");
+		}
 		this.value = value;
+		this.hash = 0;
 	}
 }
@@ -0,0 +1,635 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.amf3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * A compiled query that selects values from a file or value. A query is a
+ * path of the form used by {@link AmfUtils#resolve(AmfValue, String)}, where
+ * each key can also be one of the following.
+ * </p>
+ * <ul>
+ * <li><code>*</code> selects every value held by an array, dictionary, object
+ * or vector.</li>
+ * <li><code>[*]</code> does the same, and <code>[3]</code> or
+ * <code>['key']</code> select a single value, without a period before
+ * them.</li>
+ * <li><code>[?(filter)]</code> selects every held value for which the filter
+ * is true. In the filter <code>@</code> is the held value, and
+ * <code>@.key</code> resolves a path from it. These can be compared with
+ * <code>==</code>, <code>!=</code>, <code>&lt;</code>, <code>&lt;=</code>,
+ * <code>&gt;</code> or <code>&gt;=</code> to a quoted string, a number,
+ * <code>true</code>, <code>false</code> or <code>null</code>. Without a
+ * comparison the filter is true if the path resolves. Filters can be combined
+ * with <code>&amp;&amp;</code>, <code>||</code>, <code>!</code> and
+ * parentheses.</li>
+ * </ul>
+ * <p>
+ * For example <code>characters.*.inventory[?(@.quantity &gt; 1)].shortName</code>
+ * selects the names of every stack of items held by any character.
+ * </p>
+ * <p>
+ * Values are selected one at a time as they are iterated, so nothing is copied,
+ * values that are never reached are never loaded, and finding the first match
+ * stops there.
+ * </p>
+ * 
+ * @author Robert Maupin
+ *
+ */
+public final class AmfQuery {
+	/**
+	 * Selects values held by a value, or by the entries of a file.
+	 */
+	private static abstract class Step {
+		protected abstract Iterator<AmfValue> apply(AmfFile file);
+
+		protected abstract Iterator<AmfValue> apply(AmfValue value);
+	}
+
+	/**
+	 * Selects the value held with a key.
+	 */
+	private static class KeyStep extends Step {
+		private final AmfString dictKey;
+		private final int index;
+		private final String key;
+
+		private KeyStep(String key) {
+			this.key = key;
+			this.index = CompiledPath.toIndex(key);
+			this.dictKey = new AmfString(key);
+		}
+
+		@Override
+		protected Iterator<AmfValue> apply(AmfFile file) {
+			return single(file.get(key));
+		}
+
+		@Override
+		protected Iterator<AmfValue> apply(AmfValue value) {
+			return single(CompiledPath.child(value, key, index, dictKey));
+		}
+	}
+
+	/**
+	 * Selects every held value, or only those that match a filter.
+	 */
+	private static class AllStep extends Step {
+		private final Predicate<AmfValue> filter;
+
+		private AllStep(Predicate<AmfValue> filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		protected Iterator<AmfValue> apply(AmfFile file) {
+			return filter(file.values().iterator());
+		}
+
+		@Override
+		protected Iterator<AmfValue> apply(AmfValue value) {
+			switch (value.getType()) {
+			case Array:
+				AmfArray array = (AmfArray) value;
+				return filter(new Concat(array.getDense().iterator(), array.getAssociative().values().iterator()));
+			case Dictionary:
+				return filter(((AmfDictionary) value).values().iterator());
+			case Object:
+				AmfObject obj = (AmfObject) value;
+				return filter(new Concat(obj.getSealedMap().values().iterator(),
+						obj.getDynamicMap().values().iterator()));
+			case VectorDouble:
+			case VectorGeneric:
+			case VectorInt:
+			case VectorUInt:
+				return filter(((AmfVector<?>) value).iterator());
+			default: // holds no values
+				return Collections.emptyIterator();
+			}
+		}
+
+		/**
+		 * Filters the given values, which must all be AmfValues.
+		 */
+		@SuppressWarnings("unchecked")
+		private Iterator<AmfValue> filter(Iterator<?> values) {
+			Iterator<AmfValue> result = (Iterator<AmfValue>) values;
+			if (filter == null) {
+				return result;
+			}
+			return new Filter(result, filter);
+		}
+	}
+
+	/**
+	 * Iterates one iterator and then another.
+	 */
+	private static class Concat implements Iterator<AmfValue> {
+		private Iterator<AmfValue> current;
+		private Iterator<AmfValue> next;
+
+		private Concat(Iterator<AmfValue> first, Iterator<AmfValue> second) {
+			this.current = first;
+			this.next = second;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (!current.hasNext() && next != null) {
+				current = next;
+				next = null;
+			}
+			return current.hasNext();
+		}
+
+		@Override
+		public AmfValue next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return current.next();
+		}
+	}
+
+	/**
+	 * Iterates the values of another iterator that are not null and match a
+	 * filter.
+	 */
+	private static class Filter implements Iterator<AmfValue> {
+		private final Predicate<AmfValue> filter;
+		private AmfValue next;
+		private final Iterator<? extends AmfValue> values;
+
+		private Filter(Iterator<? extends AmfValue> values, Predicate<AmfValue> filter) {
+			this.values = values;
+			this.filter = filter;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (next == null && values.hasNext()) {
+				AmfValue value = values.next();
+				if (value != null && filter.test(value)) {
+					next = value;
+				}
+			}
+			return next != null;
+		}
+
+		@Override
+		public AmfValue next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			AmfValue value = next;
+			next = null;
+			return value;
+		}
+	}
+
+	/**
+	 * Reads a query into the steps it is made of.
+	 */
+	private static class Parser {
+		private int position;
+		private final String query;
+
+		private Parser(String query) {
+			this.query = query;
+		}
+
+		private Step[] parse() {
+			List<Step> steps = new ArrayList<Step>();
+			while (position < query.length()) {
+				char c = query.charAt(position);
+				if (c == '.') {
+					++position;
+				} else if (c == '[') {
+					++position;
+					steps.add(parseBracket());
+					expect(']');
+				} else {
+					int start = position;
+					while (position < query.length() && query.charAt(position) != '.' && query.charAt(position) != '[') {
+						++position;
+					}
+					String key = query.substring(start, position);
+					steps.add("*".equals(key) ? new AllStep(null) : new KeyStep(key));
+				}
+			}
+			return steps.toArray(new Step[steps.size()]);
+		}
+
+		private void expect(char c) {
+			skipSpace();
+			if (position >= query.length() || query.charAt(position) != c) {
+				throw error("Expected '" + c + "'");
+			}
+			++position;
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at " + position + " in query: " + query);
+		}
+
+		private Step parseBracket() {
+			skipSpace();
+			if (position >= query.length()) {
+				throw error("Expected a key");
+			}
+			char c = query.charAt(position);
+			if (c == '*') {
+				++position;
+				return new AllStep(null);
+			}
+			if (c == '\'' || c == '"') {
+				return new KeyStep(parseString());
+			}
+			if (c == '?') {
+				++position;
+				expect('(');
+				Predicate<AmfValue> filter = parseOr();
+				expect(')');
+				return new AllStep(filter);
+			}
+			int start = position;
+			while (position < query.length() && Character.isDigit(query.charAt(position))) {
+				++position;
+			}
+			if (start == position) {
+				throw error("Expected a key");
+			}
+			return new KeyStep(query.substring(start, position));
+		}
+
+		private Predicate<AmfValue> parseOr() {
+			Predicate<AmfValue> result = parseAnd();
+			while (skip("||")) {
+				result = result.or(parseAnd());
+			}
+			return result;
+		}
+
+		private Predicate<AmfValue> parseAnd() {
+			Predicate<AmfValue> result = parseNot();
+			while (skip("&&")) {
+				result = result.and(parseNot());
+			}
+			return result;
+		}
+
+		private Predicate<AmfValue> parseNot() {
+			skipSpace();
+			if (skip("!")) {
+				return parseNot().negate();
+			}
+			if (skip("(")) {
+				Predicate<AmfValue> result = parseOr();
+				expect(')');
+				return result;
+			}
+			return parseComparison();
+		}
+
+		private Predicate<AmfValue> parseComparison() {
+			expect('@');
+			int start = position;
+			while (position < query.length() && isPathChar(query.charAt(position))) {
+				++position;
+			}
+			CompiledPath path = new CompiledPath(query.substring(start, position));
+			String op = null;
+			for (String o : new String[] { "==", "!=", "<=", ">=", "<", ">" }) {
+				if (skip(o)) {
+					op = o;
+					break;
+				}
+			}
+			if (op == null) {
+				return v -> path.resolve(v) != null;
+			}
+			Object literal = parseLiteral();
+			String operator = op;
+			return v -> {
+				AmfValue value = path.resolve(v);
+				if (value == null) {
+					return false;
+				}
+				Integer cmp = compare(value, literal);
+				if (cmp == null) {
+					return "!=".equals(operator);
+				}
+				switch (operator) {
+				case "==":
+					return cmp == 0;
+				case "!=":
+					return cmp != 0;
+				case "<=":
+					return cmp <= 0;
+				case ">=":
+					return cmp >= 0;
+				case "<":
+					return cmp < 0;
+				default:
+					return cmp > 0;
+				}
+			};
+		}
+
+		private static boolean isPathChar(char c) {
+			return !Character.isWhitespace(c) && "=!<>&|()[]".indexOf(c) == -1;
+		}
+
+		/**
+		 * Compares the given value to a literal, or returns null if they are not of
+		 * types that can be compared.
+		 */
+		private static Integer compare(AmfValue value, Object literal) {
+			switch (value.getType()) {
+			case String:
+				if (literal instanceof String) {
+					return ((AmfString) value).getValue().compareTo((String) literal);
+				}
+				return null;
+			case Integer:
+				if (literal instanceof Double) {
+					return Double.compare(((AmfInteger) value).getValue(), (Double) literal);
+				}
+				return null;
+			case Double:
+				if (literal instanceof Double) {
+					return Double.compare(((AmfDouble) value).getValue(), (Double) literal);
+				}
+				return null;
+			case True:
+			case False:
+				if (literal instanceof Boolean) {
+					return Boolean.compare(((AmfBoolean) value).getValue(), (Boolean) literal);
+				}
+				return null;
+			case Null:
+			case Undefined:
+				return literal == null ? 0 : null;
+			default:
+				return null;
+			}
+		}
+
+		private Object parseLiteral() {
+			skipSpace();
+			if (position >= query.length()) {
+				throw error("Expected a value");
+			}
+			char c = query.charAt(position);
+			if (c == '\'' || c == '"') {
+				return parseString();
+			}
+			int start = position;
+			while (position < query.length() && isPathChar(query.charAt(position))) {
+				++position;
+			}
+			String word = query.substring(start, position);
+			switch (word) {
+			case "true":
+				return Boolean.TRUE;
+			case "false":
+				return Boolean.FALSE;
+			case "null":
+				return null;
+			default:
+				try {
+					return Double.valueOf(word);
+				} catch (NumberFormatException e) {
+					position = start;
+					throw error("Expected a value");
+				}
+			}
+		}
+
+		private String parseString() {
+			char quote = query.charAt(position++);
+			StringBuilder buf = new StringBuilder();
+			while (position < query.length()) {
+				char c = query.charAt(position++);
+				if (c == quote) {
+					return buf.toString();
+				}
+				if (c == '\\' && position < query.length()) {
+					c = query.charAt(position++);
+				}
+				buf.append(c);
+			}
+			throw error("Unterminated string");
+		}
+
+		/**
+		 * Skips the given text if it comes next, after any whitespace.
+		 */
+		private boolean skip(String text) {
+			skipSpace();
+			if (query.startsWith(text, position)) {
+				position += text.length();
+				return true;
+			}
+			return false;
+		}
+
+		private void skipSpace() {
+			while (position < query.length() && Character.isWhitespace(query.charAt(position))) {
+				++position;
+			}
+		}
+	}
+
+	/**
+	 * Iterates every value selected by the remaining steps from each value of
+	 * another iterator, one value at a time.
+	 */
+	private static class Selection implements Iterator<AmfValue> {
+		private int depth;
+		private AmfValue next;
+		private final Iterator<AmfValue>[] stack;
+		private final Step[] steps;
+
+		@SuppressWarnings("unchecked")
+		private Selection(Step[] steps, Iterator<AmfValue> first) {
+			this.steps = steps;
+			this.stack = (Iterator<AmfValue>[]) new Iterator<?>[steps.length + 1];
+			this.stack[0] = first;
+		}
+
+		@Override
+		public boolean hasNext() {
+			// depth first, so only one iterator per step is held at a time
+			while (next == null) {
+				while (depth >= 0 && (stack[depth] == null || !stack[depth].hasNext())) {
+					stack[depth--] = null;
+				}
+				if (depth < 0) {
+					return false;
+				}
+				AmfValue value = stack[depth].next();
+				if (value == null) {
+					continue;
+				}
+				if (depth == steps.length) {
+					next = value;
+				} else {
+					stack[depth + 1] = steps[depth].apply(value);
+					++depth;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public AmfValue next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			AmfValue value = next;
+			next = null;
+			return value;
+		}
+	}
+
+	/**
+	 * Compiles the given query.
+	 * 
+	 * @param query
+	 *            the query
+	 * @return the compiled query
+	 * @throws IllegalArgumentException
+	 *             if the query is not valid
+	 */
+	public static AmfQuery compile(String query) {
+		return new AmfQuery(query);
+	}
+
+	private static Iterator<AmfValue> single(AmfValue value) {
+		if (value == null) {
+			return Collections.emptyIterator();
+		}
+		return Collections.singleton(value).iterator();
+	}
+
+	private final Step[] fileSteps;
+	private final String query;
+	private final Step[] steps;
+
+	private AmfQuery(String query) {
+		this.query = query;
+		this.steps = new Parser(query).parse();
+		this.fileSteps = steps.length == 0 ? steps : Arrays.copyOfRange(steps, 1, steps.length);
+	}
+
+	/**
+	 * Gets the first value selected from the given file.
+	 * 
+	 * @param file
+	 *            the file to select from
+	 * @return the value, or null if none was selected.
+	 */
+	public AmfValue first(AmfFile file) {
+		Iterator<AmfValue> it = iterator(file);
+		return it.hasNext() ? it.next() : null;
+	}
+
+	/**
+	 * Gets the first value selected from the given value.
+	 * 
+	 * @param value
+	 *            the value to select from
+	 * @return the value, or null if none was selected.
+	 */
+	public AmfValue first(AmfValue value) {
+		Iterator<AmfValue> it = iterator(value);
+		return it.hasNext() ? it.next() : null;
+	}
+
+	/**
+	 * Selects values from the given file, where the first key of the query is
+	 * that of an entry in the file.
+	 * 
+	 * @param file
+	 *            the file to select from
+	 * @return an iterator of the selected values
+	 */
+	public Iterator<AmfValue> iterator(AmfFile file) {
+		if (steps.length == 0) {
+			return Collections.emptyIterator();
+		}
+		return new Selection(fileSteps, steps[0].apply(file));
+	}
+
+	/**
+	 * Selects values from the given value. An empty query selects the value
+	 * itself.
+	 * 
+	 * @param value
+	 *            the value to select from
+	 * @return an iterator of the selected values
+	 */
+	public Iterator<AmfValue> iterator(AmfValue value) {
+		return new Selection(steps, single(value));
+	}
+
+	/**
+	 * Selects values from the given file, as an iterable that can be used in a for
+	 * loop.
+	 * 
+	 * @param file
+	 *            the file to select from
+	 * @return the selected values
+	 * @see #iterator(AmfFile)
+	 */
+	public Iterable<AmfValue> select(AmfFile file) {
+		return () -> iterator(file);
+	}
+
+	/**
+	 * Selects values from the given value, as an iterable that can be used in a
+	 * for loop.
+	 * 
+	 * @param value
+	 *            the value to select from
+	 * @return the selected values
+	 * @see #iterator(AmfValue)
+	 */
+	public Iterable<AmfValue> select(AmfValue value) {
+		return () -> iterator(value);
+	}
+
+	@Override
+	public String toString() {
+		return query;
+	}
+}
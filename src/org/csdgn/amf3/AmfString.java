@@ -21,12 +21,174 @@
  */
 package org.csdgn.amf3;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Associated with the AMF string type. This class simply stores a Java String internally.
  * 
  * @author Robert Maupin
  */
 public class AmfString extends AmfPrimitive<String> {
+	/**
+	 * Decodes the remaining UTF-8 data in the given buffer, without changing its
+	 * position.
+	 * 
+	 * @param data
+	 *            the encoded string.
+	 * @return the decoded string.
+	 */
+	static String decode(ByteBuffer data) {
+		return decode(data, data.position(), data.remaining());
+	}
+
+	/**
+	 * Decodes the UTF-8 data at the given position in the given buffer, without
+	 * changing its position. Strings that are all ASCII, as nearly all are, are
+	 * copied straight into the string instead of going through the UTF-8 decoder.
+	 * 
+	 * @param data
+	 *            the buffer holding the encoded string.
+	 * @param start
+	 *            the position the string starts at.
+	 * @param length
+	 *            the length of the string in bytes.
+	 * @return the decoded string.
+	 */
+	static String decode(ByteBuffer data, int start, int length) {
+		Charset charset = StandardCharsets.UTF_8;
+		if (isAscii(data, start, length)) {
+			// every ASCII byte is the same char in Latin-1, which decodes by copying
+			charset = StandardCharsets.ISO_8859_1;
+		}
+		if (data.hasArray()) {
+			return new String(data.array(), data.arrayOffset() + start, length, charset);
+		}
+		byte[] bytes = new byte[length];
+		ByteBuffer src = data.duplicate();
+		src.position(start);
+		src.get(bytes);
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * Decodes the given UTF-8 data.
+	 * 
+	 * @param data
+	 *            the array holding the encoded string.
+	 * @param offset
+	 *            the offset the string starts at.
+	 * @param length
+	 *            the length of the string in bytes.
+	 * @return the decoded string.
+	 */
+	static String decode(byte[] data, int offset, int length) {
+		return decode(ByteBuffer.wrap(data), offset, length);
+	}
+
+	/**
+	 * Encodes the given string as UTF-8 into the given array, which must have room
+	 * for {@link #encodedLength(String)} bytes. This encodes the same as
+	 * {@link String#getBytes(Charset)}, an unpaired surrogate becomes a '?'.
+	 * 
+	 * @param str
+	 *            the string to encode.
+	 * @param data
+	 *            the array to encode into.
+	 * @param offset
+	 *            the offset to start at.
+	 * @return the offset after the encoded string.
+	 */
+	static int encode(String str, byte[] data, int offset) {
+		int length = str.length();
+		int i = 0;
+		// nearly every string is ASCII, which is one byte per char
+		for (; i < length; ++i) {
+			char c = str.charAt(i);
+			if (c >= 0x80) {
+				break;
+			}
+			data[offset++] = (byte) c;
+		}
+		for (; i < length; ++i) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				data[offset++] = (byte) c;
+			} else if (c < 0x800) {
+				data[offset++] = (byte) (0xC0 | (c >> 6));
+				data[offset++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+					int cp = Character.toCodePoint(c, str.charAt(++i));
+					data[offset++] = (byte) (0xF0 | (cp >> 18));
+					data[offset++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+					data[offset++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+					data[offset++] = (byte) (0x80 | (cp & 0x3F));
+				} else {
+					data[offset++] = '?';
+				}
+			} else {
+				data[offset++] = (byte) (0xE0 | (c >> 12));
+				data[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				data[offset++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Gets the length in bytes of the given string once encoded as UTF-8.
+	 * 
+	 * @param str
+	 *            the string to measure.
+	 * @return the encoded length.
+	 */
+	static int encodedLength(String str) {
+		int length = str.length();
+		int bytes = length;
+		for (int i = 0; i < length; ++i) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				continue;
+			}
+			if (c < 0x800) {
+				bytes += 1;
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+					// four bytes for the two chars
+					bytes += 2;
+					++i;
+				}
+			} else {
+				bytes += 2;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Checks if the given range of the buffer is all ASCII, eight bytes at a time.
+	 */
+	private static boolean isAscii(ByteBuffer data, int start, int length) {
+		int end = start + length;
+		int i = start;
+		for (; i + 8 <= end; i += 8) {
+			if ((data.getLong(i) & 0x8080808080808080L) != 0) {
+				return false;
+			}
+		}
+		for (; i < end; ++i) {
+			if (data.get(i) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private ByteBuffer encoded;
+	private boolean pending;
+
 	/**
 	 * Defines an empty AmfString with zero length.
 	 */
@@ -41,6 +203,20 @@ public class AmfString extends AmfPrimitive<String> {
 	public AmfString(String value) {
 		super(value);
 	}
+
+	/**
+	 * Defines an AmfString that is a view of the given UTF-8 data. The data is not
+	 * decoded until the value is first used, and is kept as the encoded form of
+	 * this string until it is changed. It must not change while it is held.
+	 * 
+	 * @param encoded
+	 *            The encoded string value.
+	 */
+	AmfString(ByteBuffer encoded) {
+		super("");
+		this.encoded = encoded;
+		this.pending = true;
+	}
 	
 	@Override
 	public boolean equals(AmfValue val) {
@@ -52,10 +228,58 @@ public class AmfString extends AmfPrimitive<String> {
 		return false;
 	}
 
+	/**
+	 * Gets the UTF-8 form of this string, if it is known. This is the data a view
+	 * was read from, or the data kept by {@link #setEncoded(byte[])}. Either is
+	 * dropped when the value is changed.
+	 * 
+	 * @return the encoded string, which must not be changed, or null if it is not
+	 *         known.
+	 */
+	ByteBuffer getEncoded() {
+		return encoded;
+	}
+
 	@Override
 	public AmfType getType() {
 		return AmfType.String;
 	}
+
+	/**
+	 * Strings hash only their value, as a string equals an xml string with the
+	 * same value.
+	 */
+	@Override
+	int hashValue() {
+		return getValue().hashCode();
+	}
+
+	@Override
+	public String getValue() {
+		if(pending) {
+			super.setValue(decode(encoded));
+			pending = false;
+		}
+		return super.getValue();
+	}
+
+	/**
+	 * Keeps the given UTF-8 form of the current value, so it does not have to be
+	 * encoded again until the value is changed.
+	 * 
+	 * @param data
+	 *            the encoded value, which must not be changed.
+	 */
+	void setEncoded(byte[] data) {
+		encoded = ByteBuffer.wrap(data);
+	}
+
+	@Override
+	public void setValue(String value) {
+		super.setValue(value);
+		encoded = null;
+		pending = false;
+	}
 	
 	@Override
 	public String toString() {
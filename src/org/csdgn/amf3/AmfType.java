@@ -66,6 +66,22 @@ public enum AmfType {
 	/** @see AmfXml */
 	XmlDoc(0x07);
 
+	/**
+	 * The types indexed by their type marker id.
+	 */
+	private static final AmfType[] types;
+
+	static {
+		int size = 0;
+		for(AmfType type : values()) {
+			size = Math.max(size, type.id + 1);
+		}
+		types = new AmfType[size];
+		for(AmfType type : values()) {
+			types[type.id] = type;
+		}
+	}
+
 	/**
 	 * Gets the AmfType associated with the provided type marker id.
 	 * 
@@ -75,12 +91,10 @@ public enum AmfType {
 	 *         associated type.
 	 */
 	public static AmfType get(int id) {
-		for(AmfType type : values()) {
-			if(type.id == id) {
-				return type;
-			}
+		if(id < 0 || id >= types.length) {
+			return null;
 		}
-		return null;
+		return types[id];
 	}
 
 	/**
@@ -27,6 +27,17 @@ package org.csdgn.amf3;
  *
  */
 public class AmfUndefined implements AmfValue {
+	private static final AmfUndefined shared = new AmfUndefined();
+
+	/**
+	 * Gets a shared AmfUndefined. As an AmfUndefined has no state, it can be used
+	 * anywhere an AmfUndefined is needed.
+	 * 
+	 * @return The shared AmfUndefined.
+	 */
+	public static AmfUndefined shared() {
+		return shared;
+	}
 
 	@Override
 	public boolean equals(AmfValue value) {
@@ -54,6 +65,11 @@ public class AmfUndefined implements AmfValue {
 		return AmfType.Undefined;
 	}
 	
+	@Override
+	public int hashCode() {
+		return getType().id;
+	}
+	
 	@Override
 	public String toString() {
 		return "Undefined[]";
@@ -21,7 +21,9 @@
  */
 package org.csdgn.amf3;
 
-import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class AmfUtils {
 	/**
@@ -34,11 +36,7 @@ public class AmfUtils {
 	 * @return the resolved value, or null if not found.
 	 */
 	public static AmfValue resolve(AmfFile file, String ident) {
-		String[] data = split(ident, '.');
-		if (data.length == 0) {
-			return null;
-		}
-		return subresolve(file.get(data[0]), data, 1);
+		return CompiledPath.compile(ident).resolve(file);
 	}
 
 	/**
@@ -51,77 +49,177 @@ public class AmfUtils {
 	 * @return the resolved value, or null if not found.
 	 */
 	public static AmfValue resolve(AmfValue amf, String ident) {
-		String[] data = split(ident, '.');
-		if (data.length == 0) {
-			return amf; //return the same value if empty
-		}
-		return subresolve(amf, data, 0);
+		return CompiledPath.compile(ident).resolve(amf); //the same value if empty
 	}
 
 	/**
-	 * Smart Fast Split. Removes null sections (length 0). "ab..cd" would produce
-	 * [ab][cd] with '.'
+	 * Replaces the value associated with the string, in whatever array, dictionary
+	 * or object holds it. Only an existing value is replaced.
+	 * 
+	 * @param file  file to resolve
+	 * @param ident the identifier
+	 * @param value the value to replace it with
+	 * @return true if the value was replaced, false if it was not found.
 	 */
-	private static final String[] split(String src, char delim) {
-		ArrayList<String> output = new ArrayList<String>();
-		String tmp = "";
-		int index = 0;
-		int lindex = 0;
-		while ((index = src.indexOf(delim, lindex)) != -1) {
-			tmp = src.substring(lindex, index);
-			if (tmp.length() > 0) {
-				output.add(tmp);
+	public static boolean replace(AmfFile file, String ident, AmfValue value) {
+		CompiledPath path = CompiledPath.compile(ident);
+		int last = path.size() - 1;
+		if (last == -1) {
+			return false;
+		}
+		if (last == 0) {
+			if (!file.containsKey(path.getKey(0))) {
+				return false;
 			}
-			lindex = index + 1;
+			file.put(path.getKey(0), value);
+			return true;
+		}
+		AmfValue parent = path.resolve(file.get(path.getKey(0)), 1, last);
+		return replaceChild(parent, path.getKey(last), path.getIndex(last), value);
+	}
+
+	/**
+	 * Replaces the value associated with the string, in whatever array, dictionary
+	 * or object holds it. Only an existing value is replaced.
+	 * 
+	 * @param amf   AmfValue to resolve from.
+	 * @param ident the identifier
+	 * @param value the value to replace it with
+	 * @return true if the value was replaced, false if it was not found.
+	 */
+	public static boolean replace(AmfValue amf, String ident, AmfValue value) {
+		CompiledPath path = CompiledPath.compile(ident);
+		int last = path.size() - 1;
+		if (last == -1) {
+			return false;
+		}
+		AmfValue parent = path.resolve(amf, 0, last);
+		return replaceChild(parent, path.getKey(last), path.getIndex(last), value);
+	}
+
+	private static boolean replaceChild(AmfValue parent, String ident, int index, AmfValue value) {
+		if (parent == null) {
+			return false;
 		}
-		tmp = src.substring(lindex);
-		if (tmp.length() > 0) {
-			output.add(tmp);
+		switch (parent.getType()) {
+		case Array:
+			AmfArray array = (AmfArray) parent;
+			if (array.getAssociative().containsKey(ident)) {
+				array.put(ident, value);
+				return true;
+			}
+			if (index != -1 && array.getDenseSize() > index) {
+				array.getDense().set(index, value);
+				return true;
+			}
+			return false;
+		case Dictionary:
+			AmfDictionary dict = (AmfDictionary) parent;
+			AmfString key = new AmfString(ident);
+			if (dict.containsKey(key)) {
+				dict.put(key, value);
+				return true;
+			}
+			return false;
+		case Object:
+			AmfObject obj = (AmfObject) parent;
+			if (obj.getSealedMap().containsKey(ident)) {
+				obj.getSealedMap().put(ident, value);
+				return true;
+			} else if (obj.getDynamicMap().containsKey(ident)) {
+				obj.getDynamicMap().put(ident, value);
+				return true;
+			}
+			return false;
+		default: // unsupported type
+			return false;
 		}
-		return output.toArray(new String[output.size()]);
 	}
 
-	protected static AmfValue subresolve(AmfValue value, String[] idents, int identIndex) {
+	/**
+	 * Hashes the given value along with everything it contains. Unlike
+	 * {@link Object#hashCode()}, which hashes the identity of objects, arrays,
+	 * dictionaries and vectors, this walks the whole tree. Values that are equal
+	 * have the same deep hash.
+	 * 
+	 * @param value the value to hash, may be null
+	 * @return the deep hash of the value
+	 */
+	public static int deepHashCode(AmfValue value) {
+		return deepHash(value, null);
+	}
+
+	private static int deepHash(AmfValue value, Map<AmfValue, Boolean> visiting) {
 		if (value == null) {
-			return null;
+			return 0;
+		}
+		int hash = 31 * value.getType().id;
+		switch (value.getType()) {
+		case Array:
+		case Dictionary:
+		case Object:
+		case VectorGeneric:
+			break;
+		case VectorDouble:
+			AmfVector.Double doubles = (AmfVector.Double) value;
+			for (int i = 0; i < doubles.size(); ++i) {
+				hash = 31 * hash + Double.hashCode(doubles.getDouble(i));
+			}
+			return hash;
+		case VectorInt:
+		case VectorUInt:
+			AmfVector.IntVector ints = (AmfVector.IntVector) value;
+			for (int i = 0; i < ints.size(); ++i) {
+				hash = 31 * hash + ints.getInt(i);
+			}
+			return hash;
+		default: // already hashes its contents
+			return value.hashCode();
+		}
+		if (visiting == null) {
+			visiting = new IdentityHashMap<AmfValue, Boolean>();
 		}
-		if (idents.length == identIndex) {
-			return value;
+		// a value that contains itself only hashes its type the second time
+		if (visiting.put(value, Boolean.TRUE) != null) {
+			return hash;
 		}
-		String ident = idents[identIndex];
 		switch (value.getType()) {
 		case Array:
 			AmfArray array = (AmfArray) value;
-			value = array.get(ident);
-			if (value == null) {
-				//not a perfect solution, but should do for now
-				try {
-					int index = Integer.parseInt(ident);
-					if (array.getDenseSize() > index) {
-						value = array.get(index);
-					}
-				} catch (NumberFormatException e) {
-					//not a number
-				}
+			for (AmfValue v : array.getDense()) {
+				hash = 31 * hash + deepHash(v, visiting);
 			}
+			hash = 31 * hash + deepHash(array.getAssociative(), visiting);
 			break;
 		case Dictionary:
-			AmfDictionary dict = (AmfDictionary) value;
-			value = dict.get(new AmfString(ident));
+			// map entries are hashed in any order, as maps equal in any order
+			int sum = 0;
+			for (Map.Entry<AmfValue, AmfValue> e : ((AmfDictionary) value).entrySet()) {
+				sum += deepHash(e.getKey(), visiting) ^ deepHash(e.getValue(), visiting);
+			}
+			hash = 31 * hash + sum;
 			break;
 		case Object:
 			AmfObject obj = (AmfObject) value;
-			value = null;
-			if (obj.getSealedMap().containsKey(ident)) {
-				value = obj.getSealedMap().get(ident);
-			} else if (obj.getDynamicMap().containsKey(ident)) {
-				value = obj.getDynamicMap().get(ident);
+			hash = 31 * hash + deepHash(obj.getSealedMap(), visiting);
+			hash = 31 * hash + deepHash(obj.getDynamicMap(), visiting);
+			break;
+		default:
+			for (Object v : (List<?>) value) {
+				hash = 31 * hash + deepHash((AmfValue) v, visiting);
 			}
 			break;
-		default: // unsupported type
-			return null;
 		}
-		return subresolve(value, idents, identIndex + 1);
+		visiting.remove(value);
+		return hash;
+	}
+
+	private static int deepHash(Map<String, AmfValue> map, Map<AmfValue, Boolean> visiting) {
+		int sum = 0;
+		for (Map.Entry<String, AmfValue> e : map.entrySet()) {
+			sum += e.getKey().hashCode() ^ deepHash(e.getValue(), visiting);
+		}
+		return sum;
 	}
 
 	public static void setString(AmfValue amf, String ident, String value) {
@@ -133,10 +231,14 @@ public class AmfUtils {
 	}
 	
 	public static void setInt(AmfValue amf, String ident, Integer value) {
-		amf = resolve(amf, ident);
-		if(amf.getType() == AmfType.Integer) {
-			AmfInteger rval = (AmfInteger)amf;
-			rval.setValue(value);
+		AmfValue raw = resolve(amf, ident);
+		if(raw.getType() == AmfType.Integer) {
+			AmfInteger rval = (AmfInteger)raw;
+			if(rval.isShared()) {
+				replace(amf, ident, new AmfInteger(value));
+			} else {
+				rval.setValue(value);
+			}
 		}
 	}
 }
@@ -21,8 +21,22 @@
  */
 package org.csdgn.amf3;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 
 /**
  * Associated with the AMF undefined type. A AmfVector is a dense array of
@@ -37,33 +51,218 @@ import java.util.ListIterator;
  */
 public abstract class AmfVector<E> extends ArrayList<E> implements AmfValue {
 	/**
-	 * A specialized version of the AmfVector for Double values.
+	 * A specialized version of the AmfVector for Double values. The values are
+	 * stored in a double array, and the AmfDoubles of this vector are views of
+	 * the value at their index. A view stops working once the vector is
+	 * structurally modified, such as by adding or removing a value.
 	 * 
 	 * @author Robert Maupin
 	 * @see AmfVector
 	 */
-	public static class Double extends AmfVector<AmfDouble> {
+	public static class Double extends PrimitiveVector<AmfDouble> {
 		private static final long serialVersionUID = -3480093963158329436L;
 
+		private int size;
+		private double[] values;
+
+		/**
+		 * Constructs an empty vector.
+		 */
+		public Double() {
+			values = new double[8];
+		}
+
+		/**
+		 * Constructs a vector holding the given values. The array is used as is.
+		 * 
+		 * @param values
+		 *            The values of the vector.
+		 */
+		Double(double[] values) {
+			this.values = values;
+			this.size = values.length;
+		}
+
+		/**
+		 * Appends the specified value to the end of this vector.
+		 * 
+		 * @param value
+		 *            The value to add.
+		 * @throws UnsupportedOperationException
+		 *             if the vector has a fixed length and is full.
+		 */
+		public void addDouble(double value) {
+			checkRoom(1);
+			insertDouble(size, value);
+		}
+
+		@Override
+		public Object clone() {
+			Double vec = (Double) super.clone();
+			vec.values = Arrays.copyOf(values, size);
+			return vec;
+		}
+
+		@Override
+		AmfDouble detach(int index) {
+			return new AmfDouble(getDouble(index));
+		}
+
+		@Override
+		public void ensureCapacity(int minCapacity) {
+			if(minCapacity > values.length) {
+				values = Arrays.copyOf(values, Math.max(minCapacity, values.length << 1));
+			}
+		}
+
+		@Override
+		public boolean equals(AmfValue value) {
+			if(value instanceof Double) {
+				Double vec = (Double) value;
+				if(vec.size != size || vec.isFixedLength() != isFixedLength()) {
+					return false;
+				}
+				for(int i = 0; i < size; ++i) {
+					if(java.lang.Double.doubleToLongBits(vec.values[i]) != java.lang.Double.doubleToLongBits(values[i])) {
+						return false;
+					}
+				}
+				return true;
+			}
+			return super.equals(value);
+		}
+
+		@Override
+		public AmfDouble get(int index) {
+			checkIndex(index, size);
+			return new DoubleElement(this, index);
+		}
+
+		/**
+		 * Gets the internal data array of this vector.
+		 * 
+		 * @return the backing data array, only the first {@link #size()} values are
+		 *         used.
+		 */
+		protected double[] getBackingArray() {
+			return values;
+		}
+
+		/**
+		 * Gets the value at the given index.
+		 * 
+		 * @param index
+		 *            The index of the value.
+		 * @return The value.
+		 */
+		public double getDouble(int index) {
+			checkIndex(index, size);
+			return values[index];
+		}
+
 		@Override
 		public AmfType getType() {
 			return AmfType.VectorDouble;
 		}
-		
+
+		@Override
+		void insert(int index, AmfDouble value) {
+			insertDouble(index, value.getValue());
+		}
+
+		@Override
+		void insertAll(int index, Object[] added) {
+			double[] doubles = new double[added.length];
+			for(int i = 0; i < added.length; ++i) {
+				doubles[i] = ((AmfDouble) added[i]).getValue();
+			}
+			checkPosition(index, size);
+			ensureCapacity(size + doubles.length);
+			System.arraycopy(values, index, values, index + doubles.length, size - index);
+			System.arraycopy(doubles, 0, values, index, doubles.length);
+			size += doubles.length;
+			++modCount;
+		}
+
+		private void insertDouble(int index, double value) {
+			checkPosition(index, size);
+			ensureCapacity(size + 1);
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = value;
+			++size;
+			++modCount;
+		}
+
+		@Override
+		public AmfDouble remove(int index) {
+			AmfDouble old = detach(index);
+			removeRange(index, index + 1);
+			return old;
+		}
+
+		@Override
+		protected void removeRange(int fromIndex, int toIndex) {
+			checkRange(fromIndex, toIndex, size);
+			System.arraycopy(values, toIndex, values, fromIndex, size - toIndex);
+			size -= toIndex - fromIndex;
+			++modCount;
+		}
+
+		@Override
+		public AmfDouble set(int index, AmfDouble value) {
+			AmfDouble old = detach(index);
+			values[index] = value.getValue();
+			return old;
+		}
+
+		/**
+		 * Sets the value at the given index.
+		 * 
+		 * @param index
+		 *            The index of the value.
+		 * @param value
+		 *            The value to set.
+		 */
+		public void setDouble(int index, double value) {
+			checkIndex(index, size);
+			values[index] = value;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Gets the values of this vector as a standard java double array.
+		 * 
+		 * @return The values of this vector.
+		 */
+		public double[] toDoubleArray() {
+			return Arrays.copyOf(values, size);
+		}
+
 		@Override
 		public String toString() {
 			StringBuilder buf = new StringBuilder();
 			buf.append("VectorDouble{");
 			boolean first = true;
-			for(AmfDouble val : this) {
+			for(int i = 0; i < size; ++i) {
 				if(!first) {
 					buf.append(",");
 				}
-				buf.append(val.getValue());
+				buf.append(values[i]);
 			}
 			buf.append("}");
 			return buf.toString();
 		}
+
+		@Override
+		public void trimToSize() {
+			if(size < values.length) {
+				values = Arrays.copyOf(values, size);
+			}
+		}
 	}
 
 	/**
@@ -74,7 +273,7 @@ public abstract class AmfVector<E> extends ArrayList<E> implements AmfValue {
 	 */
 	public static class Generic extends AmfVector<AmfValue> {
 		private static final long serialVersionUID = 8738695117352866726L;
-		
+
 		private String typeName;
 
 		public Generic() {
@@ -97,7 +296,7 @@ public abstract class AmfVector<E> extends ArrayList<E> implements AmfValue {
 		public void setTypeName(String typeName) {
 			this.typeName = typeName;
 		}
-		
+
 		@Override
 		public String toString() {
 			StringBuilder buf = new StringBuilder();
@@ -115,29 +314,48 @@ public abstract class AmfVector<E> extends ArrayList<E> implements AmfValue {
 	}
 
 	/**
-	 * A specialized version of the AmfVector for Integer values.
+	 * A specialized version of the AmfVector for Integer values. The values are
+	 * stored in an int array, and the AmfIntegers of this vector are views of the
+	 * value at their index. A view stops working once the vector is structurally
+	 * modified, such as by adding or removing a value.
 	 * 
 	 * @author Robert Maupin
 	 * @see AmfVector
 	 */
-	public static class Integer extends AmfVector<AmfInteger> {
+	public static class Integer extends IntVector {
 		private static final long serialVersionUID = -7069489965784376070L;
 
+		/**
+		 * Constructs an empty vector.
+		 */
+		public Integer() {
+		}
+
+		/**
+		 * Constructs a vector holding the given values. The array is used as is.
+		 * 
+		 * @param values
+		 *            The values of the vector.
+		 */
+		Integer(int[] values) {
+			super(values);
+		}
+
 		@Override
 		public AmfType getType() {
 			return AmfType.VectorInt;
 		}
-		
+
 		@Override
 		public String toString() {
 			StringBuilder buf = new StringBuilder();
 			buf.append("VectorInt{");
 			boolean first = true;
-			for(AmfInteger val : this) {
+			for(int i = 0; i < size(); ++i) {
 				if(!first) {
 					buf.append(",");
 				}
-				buf.append(val.getValue());
+				buf.append(getInt(i));
 			}
 			buf.append("}");
 			return buf.toString();
@@ -145,36 +363,790 @@ public abstract class AmfVector<E> extends ArrayList<E> implements AmfValue {
 	}
 
 	/**
-	 * A specialized version of the AmfVector for Unsigned Integer values.
+	 * A specialized version of the AmfVector for Unsigned Integer values. The
+	 * values are stored in an int array, and the AmfIntegers of this vector are
+	 * views of the value at their index. A view stops working once the vector is
+	 * structurally modified, such as by adding or removing a value.
 	 * 
 	 * @author Robert Maupin
 	 * @see AmfVector
 	 */
-	public static class UnsignedInteger extends AmfVector<AmfInteger> {
+	public static class UnsignedInteger extends IntVector {
 		private static final long serialVersionUID = -5931844739349785729L;
-		
+
+		/**
+		 * Constructs an empty vector.
+		 */
+		public UnsignedInteger() {
+		}
+
+		/**
+		 * Constructs a vector holding the given values. The array is used as is.
+		 * 
+		 * @param values
+		 *            The values of the vector.
+		 */
+		UnsignedInteger(int[] values) {
+			super(values);
+		}
+
 		@Override
 		public AmfType getType() {
 			return AmfType.VectorUInt;
 		}
+
+		/**
+		 * Gets the unsigned value at the given index.
+		 * 
+		 * @param index
+		 *            The index of the value.
+		 * @return The unsigned value.
+		 */
+		public long getUnsignedInt(int index) {
+			return getInt(index) & 0xFFFFFFFFL;
+		}
+
 		@Override
 		public String toString() {
 			StringBuilder buf = new StringBuilder();
 			buf.append("VectorUnsigned{");
 			boolean first = true;
-			for(AmfInteger val : this) {
+			for(int i = 0; i < size(); ++i) {
 				if(!first) {
 					buf.append(",");
 				}
-				buf.append(val.getUnsignedValue());
+				buf.append(getUnsignedInt(i));
 			}
 			buf.append("}");
 			return buf.toString();
 		}
 	}
 
+	/**
+	 * An element of a double vector, which reads and writes the value at its
+	 * index in the vector.
+	 */
+	private static class DoubleElement extends AmfDouble {
+		private final int expectedModCount;
+		private final int index;
+		private final Double vector;
+
+		DoubleElement(Double vector, int index) {
+			this.vector = vector;
+			this.index = index;
+			this.expectedModCount = vector.modCount;
+		}
+
+		@Override
+		public boolean equals(AmfValue val) {
+			if(val instanceof AmfDouble) {
+				return getValue().equals(((AmfDouble) val).getValue());
+			}
+			return false;
+		}
+
+		@Override
+		public java.lang.Double getValue() {
+			return vector().getDouble(index);
+		}
+
+		@Override
+		public int hashCode() {
+			// the vector can change the value, so the hash is never cached
+			return hashValue();
+		}
+
+		@Override
+		public void setValue(java.lang.Double value) {
+			super.setValue(value);
+			// the super constructor sets the initial value before the vector
+			if(vector != null) {
+				vector().setDouble(index, value);
+			}
+		}
+
+		private Double vector() {
+			if(vector.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			return vector;
+		}
+	}
+
+	/**
+	 * An element of an integer vector, which reads and writes the value at its
+	 * index in the vector.
+	 */
+	private static class IntElement extends AmfInteger {
+		private final int expectedModCount;
+		private final int index;
+		private final IntVector vector;
+
+		IntElement(IntVector vector, int index) {
+			this.vector = vector;
+			this.index = index;
+			this.expectedModCount = vector.modCount;
+		}
+
+		@Override
+		public boolean equals(AmfValue val) {
+			if(val instanceof AmfInteger) {
+				return getValue().equals(((AmfInteger) val).getValue());
+			}
+			return false;
+		}
+
+		@Override
+		public java.lang.Integer getValue() {
+			return vector().getInt(index);
+		}
+
+		@Override
+		public int hashCode() {
+			// the vector can change the value, so the hash is never cached
+			return hashValue();
+		}
+
+		@Override
+		public void setValue(java.lang.Integer value) {
+			super.setValue(value);
+			// the super constructor sets the initial value before the vector
+			if(vector != null) {
+				vector().setInt(index, value);
+			}
+		}
+
+		private IntVector vector() {
+			if(vector.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			return vector;
+		}
+	}
+
+	/**
+	 * The storage shared by the integer and unsigned integer vectors.
+	 * 
+	 * @author Robert Maupin
+	 */
+	static abstract class IntVector extends PrimitiveVector<AmfInteger> {
+		private static final long serialVersionUID = 5166427713404427218L;
+
+		private int size;
+		private int[] values;
+
+		IntVector() {
+			values = new int[8];
+		}
+
+		IntVector(int[] values) {
+			this.values = values;
+			this.size = values.length;
+		}
+
+		/**
+		 * Appends the specified value to the end of this vector.
+		 * 
+		 * @param value
+		 *            The value to add.
+		 * @throws UnsupportedOperationException
+		 *             if the vector has a fixed length and is full.
+		 */
+		public void addInt(int value) {
+			checkRoom(1);
+			insertInt(size, value);
+		}
+
+		@Override
+		public Object clone() {
+			IntVector vec = (IntVector) super.clone();
+			vec.values = Arrays.copyOf(values, size);
+			return vec;
+		}
+
+		@Override
+		AmfInteger detach(int index) {
+			return new AmfInteger(getInt(index));
+		}
+
+		@Override
+		public void ensureCapacity(int minCapacity) {
+			if(minCapacity > values.length) {
+				values = Arrays.copyOf(values, Math.max(minCapacity, values.length << 1));
+			}
+		}
+
+		@Override
+		public boolean equals(AmfValue value) {
+			if(value instanceof IntVector && value.getType() == getType()) {
+				IntVector vec = (IntVector) value;
+				if(vec.size != size || vec.isFixedLength() != isFixedLength()) {
+					return false;
+				}
+				for(int i = 0; i < size; ++i) {
+					if(vec.values[i] != values[i]) {
+						return false;
+					}
+				}
+				return true;
+			}
+			return super.equals(value);
+		}
+
+		@Override
+		public AmfInteger get(int index) {
+			checkIndex(index, size);
+			return new IntElement(this, index);
+		}
+
+		/**
+		 * Gets the internal data array of this vector.
+		 * 
+		 * @return the backing data array, only the first {@link #size()} values are
+		 *         used.
+		 */
+		protected int[] getBackingArray() {
+			return values;
+		}
+
+		/**
+		 * Gets the value at the given index.
+		 * 
+		 * @param index
+		 *            The index of the value.
+		 * @return The value.
+		 */
+		public int getInt(int index) {
+			checkIndex(index, size);
+			return values[index];
+		}
+
+		@Override
+		void insert(int index, AmfInteger value) {
+			insertInt(index, value.getValue());
+		}
+
+		@Override
+		void insertAll(int index, Object[] added) {
+			int[] ints = new int[added.length];
+			for(int i = 0; i < added.length; ++i) {
+				ints[i] = ((AmfInteger) added[i]).getValue();
+			}
+			checkPosition(index, size);
+			ensureCapacity(size + ints.length);
+			System.arraycopy(values, index, values, index + ints.length, size - index);
+			System.arraycopy(ints, 0, values, index, ints.length);
+			size += ints.length;
+			++modCount;
+		}
+
+		private void insertInt(int index, int value) {
+			checkPosition(index, size);
+			ensureCapacity(size + 1);
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = value;
+			++size;
+			++modCount;
+		}
+
+		@Override
+		public AmfInteger remove(int index) {
+			AmfInteger old = detach(index);
+			removeRange(index, index + 1);
+			return old;
+		}
+
+		@Override
+		protected void removeRange(int fromIndex, int toIndex) {
+			checkRange(fromIndex, toIndex, size);
+			System.arraycopy(values, toIndex, values, fromIndex, size - toIndex);
+			size -= toIndex - fromIndex;
+			++modCount;
+		}
+
+		@Override
+		public AmfInteger set(int index, AmfInteger value) {
+			AmfInteger old = detach(index);
+			values[index] = value.getValue();
+			return old;
+		}
+
+		/**
+		 * Sets the value at the given index.
+		 * 
+		 * @param index
+		 *            The index of the value.
+		 * @param value
+		 *            The value to set.
+		 */
+		public void setInt(int index, int value) {
+			checkIndex(index, size);
+			values[index] = value;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Gets the values of this vector as a standard java int array.
+		 * 
+		 * @return The values of this vector.
+		 */
+		public int[] toIntArray() {
+			return Arrays.copyOf(values, size);
+		}
+
+		@Override
+		public void trimToSize() {
+			if(size < values.length) {
+				values = Arrays.copyOf(values, size);
+			}
+		}
+	}
+
+	/**
+	 * The base of the vectors that keep their values in a primitive array instead
+	 * of the storage of the ArrayList. Every list operation goes through
+	 * {@link #get(int)}, {@link #set(int, Object)}, {@link #insert(int, Object)}
+	 * and {@link #removeRange(int, int)}, so that the ArrayList storage is never
+	 * used.
+	 * 
+	 * @author Robert Maupin
+	 */
+	static abstract class PrimitiveVector<E> extends AmfVector<E> {
+		/**
+		 * An iterator over the indices of the vector.
+		 */
+		private class Itr implements ListIterator<E> {
+			private int cursor;
+			private int expectedModCount = modCount;
+			private int last = -1;
+
+			Itr(int index) {
+				cursor = index;
+			}
+
+			@Override
+			public void add(E value) {
+				checkForComodification();
+				PrimitiveVector.this.add(cursor++, value);
+				last = -1;
+				expectedModCount = modCount;
+			}
+
+			private void checkForComodification() {
+				if(modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return cursor < size();
+			}
+
+			@Override
+			public boolean hasPrevious() {
+				return cursor > 0;
+			}
+
+			@Override
+			public E next() {
+				checkForComodification();
+				if(cursor >= size()) {
+					throw new NoSuchElementException();
+				}
+				last = cursor++;
+				return get(last);
+			}
+
+			@Override
+			public int nextIndex() {
+				return cursor;
+			}
+
+			@Override
+			public E previous() {
+				checkForComodification();
+				if(cursor <= 0) {
+					throw new NoSuchElementException();
+				}
+				last = --cursor;
+				return get(last);
+			}
+
+			@Override
+			public int previousIndex() {
+				return cursor - 1;
+			}
+
+			@Override
+			public void remove() {
+				if(last < 0) {
+					throw new IllegalStateException();
+				}
+				checkForComodification();
+				PrimitiveVector.this.remove(last);
+				cursor = last;
+				last = -1;
+				expectedModCount = modCount;
+			}
+
+			@Override
+			public void set(E value) {
+				if(last < 0) {
+					throw new IllegalStateException();
+				}
+				checkForComodification();
+				PrimitiveVector.this.set(last, value);
+			}
+		}
+
+		private static final long serialVersionUID = -2312146381318870613L;
+
+		@Override
+		public boolean add(E value) {
+			add(size(), value);
+			return true;
+		}
+
+		@Override
+		public void add(int index, E value) {
+			checkRoom(1);
+			insert(index, value);
+		}
+
+		@Override
+		public boolean addAll(Collection<? extends E> c) {
+			return addAll(size(), c);
+		}
+
+		@Override
+		public boolean addAll(int index, Collection<? extends E> c) {
+			checkPosition(index, size());
+			Object[] added = c.toArray();
+			checkRoom(added.length);
+			if(added.length == 0) {
+				return false;
+			}
+			insertAll(index, added);
+			return true;
+		}
+
+		/**
+		 * Removes the values that do or do not match the filter, keeping the
+		 * order of the rest.
+		 */
+		private boolean batchRemove(Predicate<? super E> filter, boolean match) {
+			int expected = modCount;
+			int size = size();
+			int kept = 0;
+			for(int i = 0; i < size; ++i) {
+				E value = get(i);
+				if(filter.test(value) != match) {
+					if(kept != i) {
+						set(kept, value);
+					}
+					++kept;
+				}
+			}
+			if(modCount != expected) {
+				throw new ConcurrentModificationException();
+			}
+			if(kept == size) {
+				return false;
+			}
+			removeRange(kept, size);
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			removeRange(0, size());
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return indexOf(o) >= 0;
+		}
+
+		/**
+		 * Gets a value that holds the value at the given index, and does not
+		 * change with the vector.
+		 * 
+		 * @param index
+		 *            The index of the value.
+		 * @return A copy of the value.
+		 */
+		abstract E detach(int index);
+
+		@Override
+		public void forEach(Consumer<? super E> action) {
+			int expected = modCount;
+			int size = size();
+			for(int i = 0; i < size && modCount == expected; ++i) {
+				action.accept(get(i));
+			}
+			if(modCount != expected) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+		@Override
+		public int indexOf(Object o) {
+			int size = size();
+			for(int i = 0; i < size; ++i) {
+				if(get(i).equals(o)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Inserts the specified value at the specified position in this vector.
+		 * The vector has already been checked to have room for it.
+		 * 
+		 * @param index
+		 *            The index to insert the value at.
+		 * @param value
+		 *            The value to add.
+		 */
+		abstract void insert(int index, E value);
+
+		/**
+		 * Inserts the specified values at the specified position in this vector.
+		 * The vector has already been checked to have room for them. The values
+		 * are all read before any are inserted, since they may be elements of
+		 * this vector.
+		 * 
+		 * @param index
+		 *            The index to insert the values at.
+		 * @param added
+		 *            The values to add.
+		 */
+		abstract void insertAll(int index, Object[] added);
+
+		@Override
+		public boolean isEmpty() {
+			return size() == 0;
+		}
+
+		@Override
+		public Iterator<E> iterator() {
+			return new Itr(0);
+		}
+
+		@Override
+		public int lastIndexOf(Object o) {
+			for(int i = size() - 1; i >= 0; --i) {
+				if(get(i).equals(o)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public ListIterator<E> listIterator() {
+			return new Itr(0);
+		}
+
+		@Override
+		public ListIterator<E> listIterator(int index) {
+			checkPosition(index, size());
+			return new Itr(index);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			int index = indexOf(o);
+			if(index < 0) {
+				return false;
+			}
+			remove(index);
+			return true;
+		}
+
+		@Override
+		public boolean removeAll(Collection<?> c) {
+			return batchRemove(c::contains, true);
+		}
+
+		@Override
+		public boolean removeIf(Predicate<? super E> filter) {
+			return batchRemove(filter, true);
+		}
+
+		@Override
+		public void replaceAll(UnaryOperator<E> operator) {
+			int expected = modCount;
+			int size = size();
+			for(int i = 0; i < size && modCount == expected; ++i) {
+				set(i, operator.apply(get(i)));
+			}
+			if(modCount != expected) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+		@Override
+		public boolean retainAll(Collection<?> c) {
+			return batchRemove(c::contains, false);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void sort(Comparator<? super E> c) {
+			int expected = modCount;
+			int size = size();
+			Object[] sorted = new Object[size];
+			for(int i = 0; i < size; ++i) {
+				sorted[i] = detach(i);
+			}
+			Arrays.sort(sorted, (Comparator<Object>) c);
+			if(modCount != expected) {
+				throw new ConcurrentModificationException();
+			}
+			for(int i = 0; i < size; ++i) {
+				set(i, (E) sorted[i]);
+			}
+			++modCount;
+		}
+
+		@Override
+		public Spliterator<E> spliterator() {
+			return Spliterators.spliterator(this, Spliterator.ORDERED);
+		}
+
+		@Override
+		public List<E> subList(int fromIndex, int toIndex) {
+			checkRange(fromIndex, toIndex, size());
+			return new SubList<E>(this, fromIndex, toIndex);
+		}
+
+		@Override
+		public Object[] toArray() {
+			int size = size();
+			Object[] array = new Object[size];
+			for(int i = 0; i < size; ++i) {
+				array[i] = get(i);
+			}
+			return array;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> T[] toArray(T[] a) {
+			int size = size();
+			if(a.length < size) {
+				a = Arrays.copyOf(a, size);
+			}
+			for(int i = 0; i < size; ++i) {
+				a[i] = (T) get(i);
+			}
+			if(a.length > size) {
+				a[size] = null;
+			}
+			return a;
+		}
+	}
+
+	/**
+	 * A view of a range of a primitive vector.
+	 */
+	private static class SubList<E> extends AbstractList<E> implements RandomAccess {
+		private int expectedModCount;
+		private final int offset;
+		private final PrimitiveVector<E> parent;
+		private int size;
+
+		SubList(PrimitiveVector<E> parent, int fromIndex, int toIndex) {
+			this.parent = parent;
+			this.offset = fromIndex;
+			this.size = toIndex - fromIndex;
+			this.expectedModCount = parent.modCount;
+		}
+
+		@Override
+		public void add(int index, E value) {
+			checkPosition(index, size);
+			checkForComodification();
+			parent.add(offset + index, value);
+			updateSize(1);
+		}
+
+		private void checkForComodification() {
+			if(parent.modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+		@Override
+		public E get(int index) {
+			checkIndex(index, size);
+			checkForComodification();
+			return parent.get(offset + index);
+		}
+
+		@Override
+		public E remove(int index) {
+			checkIndex(index, size);
+			checkForComodification();
+			E old = parent.remove(offset + index);
+			updateSize(-1);
+			return old;
+		}
+
+		@Override
+		protected void removeRange(int fromIndex, int toIndex) {
+			checkForComodification();
+			parent.removeRange(offset + fromIndex, offset + toIndex);
+			updateSize(fromIndex - toIndex);
+		}
+
+		@Override
+		public E set(int index, E value) {
+			checkIndex(index, size);
+			checkForComodification();
+			return parent.set(offset + index, value);
+		}
+
+		@Override
+		public int size() {
+			checkForComodification();
+			return size;
+		}
+
+		private void updateSize(int change) {
+			expectedModCount = parent.modCount;
+			size += change;
+			++modCount;
+		}
+	}
+
 	private static final long serialVersionUID = 2948214021014568893L;
 
+	private static void checkIndex(int index, int size) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	private static void checkPosition(int index, int size) {
+		if(index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	private static void checkRange(int fromIndex, int toIndex, int size) {
+		if(fromIndex < 0 || toIndex > size || fromIndex > toIndex) {
+			throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size);
+		}
+	}
+
 	private int capacity;
 	private boolean fixedLength;
 
@@ -211,13 +1183,53 @@ public abstract class AmfVector<E> extends ArrayList<E> implements AmfValue {
 	 */
 	@Override
 	public boolean add(E value) {
-		if(size() + 1 > capacity) {
+		checkRoom(1);
+		return super.add(value);
+	}
+
+	/**
+	 * Inserts the specified value at the specified position in this vector.
+	 * 
+	 * @param index
+	 *            The index to insert the value at.
+	 * @param value
+	 *            The value to add.
+	 * 
+	 * @throws UnsupportedOperationException
+	 *             if the vector has a fixed length and adding this value to the
+	 *             vector would cause it to exceed its capacity. See
+	 *             {@link #setFixedLength(boolean)} to change this property
+	 *             and/or {@link #setCapacity(int)} to change the capacity.
+	 */
+	@Override
+	public void add(int index, E value) {
+		checkRoom(1);
+		super.add(index, value);
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		checkRoom(c.size());
+		return super.addAll(c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends E> c) {
+		checkRoom(c.size());
+		return super.addAll(index, c);
+	}
+
+	/**
+	 * Throws if this vector has a fixed length and cannot hold the given number of
+	 * additional values.
+	 */
+	void checkRoom(int count) {
+		if(fixedLength && size() + count > capacity) {
 			String msg = String.format("This vector is fixed length and cannot contain more than %d entries.", capacity);
 			throw new UnsupportedOperationException(msg);
 		}
-		return add(value);
 	}
-	
+
 	@Override
 	public boolean equals(AmfValue value) {
 		if(value.getType() == getType()) {
@@ -258,6 +1270,17 @@ public abstract class AmfVector<E> extends ArrayList<E> implements AmfValue {
 		return capacity;
 	}
 
+	/**
+	 * Hashes the identity of this vector. ActionScript dictionaries key vectors by
+	 * identity, so equal vectors must stay apart as keys of an
+	 * {@link AmfDictionary}. Use {@link AmfUtils#deepHashCode(AmfValue)} to hash
+	 * the elements.
+	 */
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
 	/**
 	 * Indicates if this vector has a fixed length.
 	 * 
@@ -267,18 +1290,6 @@ public abstract class AmfVector<E> extends ArrayList<E> implements AmfValue {
 		return fixedLength;
 	}
 
-	@Override
-	public ListIterator<E> listIterator() {
-		// TODO handle special add (to respect capacity)
-		return super.listIterator();
-	}
-
-	@Override
-	public ListIterator<E> listIterator(int index) {
-		// TODO handle special add (to respect capacity)
-		return super.listIterator();
-	}
-
 	/**
 	 * Sets the capacity of this vector to the specified value. The capacity
 	 * will not be used unless {@link #isFixedLength()} returns true.
@@ -305,4 +1316,4 @@ public abstract class AmfVector<E> extends ArrayList<E> implements AmfValue {
 			capacity = size();
 		}
 	}
-}
+}
\ No newline at end of file
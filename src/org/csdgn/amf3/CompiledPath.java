@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.amf3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An identifier of the form used by {@link AmfUtils#resolve(AmfValue, String)},
+ * a series of keys connected by periods, split up once so it can be resolved
+ * any number of times without parsing it again. Each key that is a number is
+ * kept as an index into the dense part of arrays as well.
+ * 
+ * @author Robert Maupin
+ *
+ */
+public final class CompiledPath {
+	private static final int CACHE_SIZE = 1024;
+
+	private static final Map<String, CompiledPath> cache = new ConcurrentHashMap<String, CompiledPath>();
+
+	/**
+	 * Gets the compiled form of the given identifier. Compiled paths are kept, so
+	 * compiling the same one again returns the same path. Once 1024 are kept
+	 * they are all let go, so the cache stays bounded.
+	 * 
+	 * @param ident
+	 *            the identifier
+	 * @return the compiled path
+	 */
+	public static CompiledPath compile(String ident) {
+		CompiledPath path = cache.get(ident);
+		if (path == null) {
+			if (cache.size() >= CACHE_SIZE) {
+				cache.clear();
+			}
+			path = new CompiledPath(ident);
+			cache.put(ident, path);
+		}
+		return path;
+	}
+
+	/**
+	 * Gets the child of the given value with the given key, or at the given index
+	 * in the dense part of an array if it has no such key.
+	 */
+	static AmfValue child(AmfValue value, String key, int index, AmfString dictKey) {
+		switch (value.getType()) {
+		case Array:
+			AmfArray array = (AmfArray) value;
+			AmfValue result = array.get(key);
+			if (result == null && index != -1 && array.getDenseSize() > index) {
+				result = array.get(index);
+			}
+			return result;
+		case Dictionary:
+			return ((AmfDictionary) value).get(dictKey);
+		case Object:
+			return ((AmfObject) value).getProperty(key);
+		default: // unsupported type
+			return null;
+		}
+	}
+
+	private final AmfString[] dictKeys;
+	private final String ident;
+	private final int[] indices;
+	private final String[] keys;
+
+	/**
+	 * Creates the compiled form of the given identifier. Empty keys, such as
+	 * between two periods in a row, are skipped.
+	 * 
+	 * @param ident
+	 *            the identifier
+	 */
+	public CompiledPath(String ident) {
+		List<String> output = new ArrayList<String>();
+		int last = 0;
+		int index;
+		while ((index = ident.indexOf('.', last)) != -1) {
+			if (index > last) {
+				output.add(ident.substring(last, index));
+			}
+			last = index + 1;
+		}
+		if (ident.length() > last) {
+			output.add(ident.substring(last));
+		}
+		this.ident = ident;
+		this.keys = output.toArray(new String[output.size()]);
+		this.indices = new int[keys.length];
+		this.dictKeys = new AmfString[keys.length];
+		for (int i = 0; i < keys.length; ++i) {
+			indices[i] = toIndex(keys[i]);
+			dictKeys[i] = new AmfString(keys[i]);
+		}
+	}
+
+	static int toIndex(String key) {
+		try {
+			int index = Integer.parseInt(key);
+			if (index >= 0) {
+				return index;
+			}
+		} catch (NumberFormatException e) {
+			// not a number
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the identifier this path was compiled from.
+	 * 
+	 * @return the identifier
+	 */
+	public String getIdent() {
+		return ident;
+	}
+
+	/**
+	 * Gets the key at the given position in this path.
+	 * 
+	 * @param index
+	 *            the position of the key
+	 * @return the key
+	 */
+	public String getKey(int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Gets the array index at the given position in this path.
+	 * 
+	 * @param index
+	 *            the position of the key
+	 * @return the index, or -1 if the key is not a number.
+	 */
+	public int getIndex(int index) {
+		return indices[index];
+	}
+
+	/**
+	 * Resolves this path in the given file, where the first key is that of an
+	 * entry in the file.
+	 * 
+	 * @param file
+	 *            the file to resolve from.
+	 * @return the resolved value, or null if not found.
+	 */
+	public AmfValue resolve(AmfFile file) {
+		if (keys.length == 0) {
+			return null;
+		}
+		return resolve(file.get(keys[0]), 1, keys.length);
+	}
+
+	/**
+	 * Resolves this path from the given value.
+	 * 
+	 * @param amf
+	 *            the value to resolve from.
+	 * @return the resolved value, or null if not found. If the path is empty
+	 *         this is the given value.
+	 */
+	public AmfValue resolve(AmfValue amf) {
+		return resolve(amf, 0, keys.length);
+	}
+
+	/**
+	 * Resolves the keys of this path from the given start up to the given end
+	 * from the given value.
+	 */
+	AmfValue resolve(AmfValue value, int start, int end) {
+		for (int i = start; i < end && value != null; ++i) {
+			value = child(value, keys[i], indices[i], dictKeys[i]);
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the number of keys in this path.
+	 * 
+	 * @return the number of keys
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	@Override
+	public String toString() {
+		return ident;
+	}
+}
@@ -0,0 +1,390 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.amf3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ * An index of every path that can be resolved in a file or value, in the form
+ * used by {@link AmfUtils#resolve(AmfValue, String)}, along with the value at
+ * each path and the value that holds it. Keys with periods in them cannot be
+ * part of a path and are left out, as are values that are reached again from
+ * inside themselves.
+ * </p>
+ * 
+ * <p>
+ * The index is built as it is used. Getting a path only indexes the values
+ * along it, while listing the paths under one or finding keys indexes all of
+ * the values that could hold them. After an array, dictionary or object is
+ * changed, {@link #invalidate(String)} must be called with its path, and it is
+ * indexed again the next time it is used. Anything in it that is still the same
+ * value at the same path keeps what was indexed for it.
+ * </p>
+ * 
+ * @author Robert Maupin
+ *
+ */
+public class PathIndex {
+	private static class Node {
+		private List<Node> children;
+		private boolean complete;
+		private final String key;
+		private final Node parent;
+		private final String path;
+		private boolean stale;
+		private final AmfValue value;
+
+		private Node(Node parent, String key, AmfValue value) {
+			this.parent = parent;
+			this.key = key;
+			this.value = value;
+			if (parent == null) {
+				this.path = "";
+			} else if (parent.parent == null) {
+				this.path = key;
+			} else {
+				this.path = parent.path + "." + key;
+			}
+		}
+	}
+
+	/**
+	 * Turns a pattern where * matches any number of characters and ? matches any
+	 * one character into a regular expression.
+	 */
+	private static Pattern compileGlob(String glob) {
+		StringBuilder regex = new StringBuilder();
+		int start = 0;
+		for (int i = 0; i < glob.length(); ++i) {
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?') {
+				if (i > start) {
+					regex.append(Pattern.quote(glob.substring(start, i)));
+				}
+				regex.append(c == '*' ? ".*" : ".");
+				start = i + 1;
+			}
+		}
+		if (glob.length() > start) {
+			regex.append(Pattern.quote(glob.substring(start)));
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	private static void put(Map<String, AmfValue> map, String key, AmfValue value) {
+		if (key.isEmpty() || key.indexOf('.') != -1 || value == null) {
+			// could never be resolved
+			return;
+		}
+		map.putIfAbsent(key, value);
+	}
+
+	private final AmfFile file;
+	private final Map<String, List<Node>> keys;
+	private final TreeMap<String, Node> nodes;
+	private final Node root;
+
+	/**
+	 * Creates an index of the given file, where the first key of each path is
+	 * that of an entry in the file.
+	 * 
+	 * @param file
+	 *            the file to index
+	 */
+	public PathIndex(AmfFile file) {
+		this(file, null);
+	}
+
+	/**
+	 * Creates an index of the given value.
+	 * 
+	 * @param value
+	 *            the value to index
+	 */
+	public PathIndex(AmfValue value) {
+		this(null, value);
+	}
+
+	private PathIndex(AmfFile file, AmfValue value) {
+		this.file = file;
+		this.keys = new HashMap<String, List<Node>>();
+		this.nodes = new TreeMap<String, Node>();
+		this.root = new Node(null, "", value);
+	}
+
+	private void add(Node node) {
+		nodes.put(node.path, node);
+		keys.computeIfAbsent(node.key, k -> new ArrayList<Node>(1)).add(node);
+	}
+
+	/**
+	 * Gets the values directly held by the value of the given node by their keys,
+	 * in the order they are resolved, so a key that is found first hides the
+	 * same key later on.
+	 */
+	private Map<String, AmfValue> children(Node node) {
+		Map<String, AmfValue> result = new LinkedHashMap<String, AmfValue>();
+		if (node == root && file != null) {
+			for (Map.Entry<String, AmfValue> e : file.entrySet()) {
+				put(result, e.getKey(), e.getValue());
+			}
+			return result;
+		}
+		AmfValue value = node.value;
+		if (value == null) {
+			return result;
+		}
+		for (Node p = node.parent; p != null; p = p.parent) {
+			if (p.value == value) {
+				// reached from inside itself
+				return result;
+			}
+		}
+		switch (value.getType()) {
+		case Array:
+			AmfArray array = (AmfArray) value;
+			for (Map.Entry<String, AmfValue> e : array.getAssociative().entrySet()) {
+				put(result, e.getKey(), e.getValue());
+			}
+			List<AmfValue> dense = array.getDense();
+			for (int i = 0; i < dense.size(); ++i) {
+				put(result, String.valueOf(i), dense.get(i));
+			}
+			break;
+		case Dictionary:
+			for (Map.Entry<AmfValue, AmfValue> e : ((AmfDictionary) value).entrySet()) {
+				if (e.getKey() instanceof AmfString) {
+					put(result, ((AmfString) e.getKey()).getValue(), e.getValue());
+				}
+			}
+			break;
+		case Object:
+			AmfObject obj = (AmfObject) value;
+			for (Map.Entry<String, AmfValue> e : obj.getSealedMap().entrySet()) {
+				put(result, e.getKey(), e.getValue());
+			}
+			for (Map.Entry<String, AmfValue> e : obj.getDynamicMap().entrySet()) {
+				put(result, e.getKey(), e.getValue());
+			}
+			break;
+		default: // holds no values
+			break;
+		}
+		return result;
+	}
+
+	/**
+	 * Indexes the values directly held by the value of the given node. Those that
+	 * are the same value with the same key as before keep their nodes.
+	 */
+	private void expand(Node node) {
+		Map<String, Node> old = new HashMap<String, Node>();
+		if (node.children != null) {
+			for (Node child : node.children) {
+				old.put(child.key, child);
+			}
+		}
+		Map<String, AmfValue> values = children(node);
+		List<Node> children = new ArrayList<Node>(values.size());
+		for (Map.Entry<String, AmfValue> e : values.entrySet()) {
+			Node child = old.remove(e.getKey());
+			if (child == null || child.value != e.getValue()) {
+				if (child != null) {
+					remove(child);
+				}
+				child = new Node(node, e.getKey(), e.getValue());
+				add(child);
+			}
+			children.add(child);
+		}
+		for (Node child : old.values()) {
+			remove(child);
+		}
+		node.children = children;
+		node.stale = false;
+	}
+
+	private void expandAll(Node node) {
+		if (node.complete) {
+			return;
+		}
+		if (node.children == null || node.stale) {
+			expand(node);
+		}
+		for (Node child : node.children) {
+			expandAll(child);
+		}
+		node.complete = true;
+	}
+
+	/**
+	 * Finds the paths of every value whose own key, the last key in its path,
+	 * matches the given pattern. In the pattern * matches any number of
+	 * characters and ? matches any one character. Everything is indexed first.
+	 * 
+	 * @param pattern
+	 *            the pattern to match keys against
+	 * @return the paths in order
+	 */
+	public List<String> find(String pattern) {
+		expandAll(root);
+		Pattern glob = compileGlob(pattern);
+		List<String> result = new ArrayList<String>();
+		for (Map.Entry<String, List<Node>> e : keys.entrySet()) {
+			if (glob.matcher(e.getKey()).matches()) {
+				for (Node node : e.getValue()) {
+					result.add(node.path);
+				}
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Gets the value at the given path.
+	 * 
+	 * @param path
+	 *            the path of the value
+	 * @return the value, or null if there is no such path.
+	 */
+	public AmfValue get(String path) {
+		Node node = getNode(path);
+		return node == null ? null : node.value;
+	}
+
+	private Node getNode(String path) {
+		Node node = nodes.get(path);
+		if (node != null && isCurrent(node)) {
+			return node;
+		}
+		// index the values along the path
+		node = root;
+		int start = 0;
+		while (start < path.length()) {
+			if (node.children == null || node.stale) {
+				expand(node);
+			}
+			int end = path.indexOf('.', start);
+			if (end == -1) {
+				end = path.length();
+			}
+			node = nodes.get(path.substring(0, end));
+			if (node == null) {
+				return null;
+			}
+			start = end + 1;
+		}
+		return node;
+	}
+
+	/**
+	 * Gets the value that holds the value at the given path.
+	 * 
+	 * @param path
+	 *            the path of the value
+	 * @return the value that holds it, or null if there is no such path or it is
+	 *         that of an entry in a file.
+	 */
+	public AmfValue getParent(String path) {
+		Node node = getNode(path);
+		return node == null || node.parent == null ? null : node.parent.value;
+	}
+
+	/**
+	 * Marks the array, dictionary or object at the given path as changed, along
+	 * with whatever holds it, so they are indexed again the next time they are
+	 * used. The empty path marks the file or value that was indexed.
+	 * 
+	 * @param path
+	 *            the path of the changed value
+	 */
+	public void invalidate(String path) {
+		Node node = path.isEmpty() ? root : nodes.get(path);
+		if (node == null) {
+			return;
+		}
+		node.stale = true;
+		if (node.parent != null) {
+			node.parent.stale = true;
+		}
+		for (Node p = node; p != null; p = p.parent) {
+			p.complete = false;
+		}
+	}
+
+	/**
+	 * Checks that nothing holding the given node has changed since it was indexed.
+	 */
+	private boolean isCurrent(Node node) {
+		for (Node p = node.parent; p != null; p = p.parent) {
+			if (p.stale) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Lists the paths of every value under the given path. Everything under it is
+	 * indexed first. The empty path lists every path.
+	 * 
+	 * @param path
+	 *            the path to list under
+	 * @return the paths in order, as a view that changes with the index
+	 */
+	public NavigableSet<String> list(String path) {
+		Node node = getNode(path);
+		if (node == null) {
+			return Collections.emptyNavigableSet();
+		}
+		expandAll(node);
+		if (node == root) {
+			return Collections.unmodifiableNavigableSet(nodes.navigableKeySet());
+		}
+		return Collections.unmodifiableNavigableSet(nodes.subMap(node.path + ".", true, node.path + "/", false)
+				.navigableKeySet());
+	}
+
+	private void remove(Node node) {
+		nodes.remove(node.path);
+		List<Node> list = keys.get(node.key);
+		list.remove(node);
+		if (list.isEmpty()) {
+			keys.remove(node.key);
+		}
+		if (node.children != null) {
+			for (Node child : node.children) {
+				remove(child);
+			}
+		}
+	}
+}
@@ -35,6 +35,7 @@ public class SimpleTrait implements Trait {
 	protected boolean externalizable;
 	protected String name;
 	protected List<String> properties;
+	private AmfObject.Shape shape;
 
 	/**
 	 * Creates a trait with the given values.
@@ -53,6 +54,7 @@ public class SimpleTrait implements Trait {
 		this.dynamic = isDynamic;
 		this.externalizable = isExternalizable;
 		this.properties = Arrays.asList(properties);
+		this.shape = new AmfObject.Shape(this.properties);
 	}
 
 	@Override
@@ -60,6 +62,13 @@ public class SimpleTrait implements Trait {
 		return name;
 	}
 
+	/**
+	 * Gets the shape shared by every object that is read with this trait.
+	 */
+	AmfObject.Shape getShape() {
+		return shape;
+	}
+
 	@Override
 	public List<String> getProperties() {
 		return properties;
@@ -0,0 +1,251 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.titsed.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.csdgn.amf3.AmfArray;
+import org.csdgn.amf3.AmfInteger;
+import org.csdgn.amf3.AmfValue;
+
+/**
+ * A set of flags backed by the dense part of an array of integers in the save.
+ * Flags are looked up in an open addressed hash table of the flags and where
+ * they are in the array, so checking, adding and removing a flag does not need
+ * to search the array. Adding and removing a flag changes the array as well.
+ * Removing a flag removes its first place in the array, and the flags after it
+ * keep their order. The set only notices the array changing size, so a flag
+ * changed in place in the array leaves it stale, and it has to be gotten again
+ * from the model once the model has been told of the change.
+ * 
+ * @author Robert Maupin
+ */
+public class FlagSet {
+	private static final int EMPTY = -1;
+
+	/**
+	 * Creates a set of the flags in the given array.
+	 * 
+	 * @param array the array of flags
+	 * @return the set, or null if the array holds something other than integers.
+	 */
+	static FlagSet of(AmfArray array) {
+		for (AmfValue value : array.getDense()) {
+			if (!(value instanceof AmfInteger)) {
+				return null;
+			}
+		}
+		FlagSet set = new FlagSet(array);
+		set.rebuild();
+		return set;
+	}
+
+	private static int hash(int flag) {
+		int h = flag * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private final AmfArray array;
+	private boolean duplicates;
+	private int[] flags;
+	private int[] indices;
+	private int length;
+	private int mask;
+	private int size;
+
+	private FlagSet(AmfArray array) {
+		this.array = array;
+	}
+
+	/**
+	 * Adds the given flag to the end of the array, if it is not already set.
+	 * 
+	 * @param flag the flag to add
+	 * @return true if the flag was added, false if it was already set.
+	 */
+	public boolean add(int flag) {
+		if (contains(flag)) {
+			return false;
+		}
+		array.add(new AmfInteger(flag));
+		put(flag, length++);
+		return true;
+	}
+
+	/**
+	 * Checks if the given flag is set.
+	 * 
+	 * @param flag the flag to check for
+	 * @return true if the flag is set
+	 */
+	public boolean contains(int flag) {
+		return indices[slot(flag)] != EMPTY;
+	}
+
+	/**
+	 * Removes the entry in the given slot, moving back any entries after it that
+	 * would no longer be found past the empty slot.
+	 */
+	private void delete(int slot) {
+		int empty = slot;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (indices[next] == EMPTY) {
+				break;
+			}
+			int ideal = hash(flags[next]) & mask;
+			// entries found from between the empty slot and this one stay put
+			boolean stays = empty <= next ? empty < ideal && ideal <= next : empty < ideal || ideal <= next;
+			if (!stays) {
+				flags[empty] = flags[next];
+				indices[empty] = indices[next];
+				empty = next;
+			}
+		}
+		indices[empty] = EMPTY;
+		--size;
+	}
+
+	/**
+	 * Checks that this set is of the given array and that the array has not
+	 * changed size since it was last read or changed by this set.
+	 */
+	boolean isCurrent(AmfArray array) {
+		return this.array == array && array.getDenseSize() == length;
+	}
+
+	private void put(int flag, int index) {
+		if ((size + 1) * 2 > flags.length) {
+			resize(flags.length * 2);
+		}
+		int slot = slot(flag);
+		if (indices[slot] == EMPTY) {
+			flags[slot] = flag;
+			indices[slot] = index;
+			++size;
+		} else {
+			duplicates = true;
+		}
+	}
+
+	/**
+	 * Reads every flag in the array again.
+	 */
+	private void rebuild() {
+		List<AmfValue> dense = array.getDense();
+		int capacity = 16;
+		while (capacity < dense.size() * 2) {
+			capacity <<= 1;
+		}
+		flags = new int[capacity];
+		indices = new int[capacity];
+		Arrays.fill(indices, EMPTY);
+		mask = capacity - 1;
+		size = 0;
+		duplicates = false;
+		length = dense.size();
+		for (int i = 0; i < length; ++i) {
+			put(((AmfInteger) dense.get(i)).getValue(), i);
+		}
+	}
+
+	/**
+	 * Removes the given flag from the array, if it is set.
+	 * 
+	 * @param flag the flag to remove
+	 * @return true if the flag was removed, false if it was not set.
+	 */
+	public boolean remove(int flag) {
+		int slot = slot(flag);
+		if (indices[slot] == EMPTY) {
+			return false;
+		}
+		// the index kept for a flag is that of its first place in the array
+		int index = indices[slot];
+		array.getDense().remove(index);
+		if (duplicates) {
+			// the flag may still be in the array, so read every flag again
+			rebuild();
+			return true;
+		}
+		delete(slot);
+		--length;
+		for (int i = 0; i < indices.length; ++i) {
+			if (indices[i] > index) {
+				--indices[i];
+			}
+		}
+		return true;
+	}
+
+	private void resize(int capacity) {
+		int[] oldFlags = flags;
+		int[] oldIndices = indices;
+		flags = new int[capacity];
+		indices = new int[capacity];
+		Arrays.fill(indices, EMPTY);
+		mask = capacity - 1;
+		for (int i = 0; i < oldIndices.length; ++i) {
+			if (oldIndices[i] != EMPTY) {
+				int slot = slot(oldFlags[i]);
+				flags[slot] = oldFlags[i];
+				indices[slot] = oldIndices[i];
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of different flags that are set.
+	 * 
+	 * @return the number of flags
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Finds the slot of the given flag, or the empty slot it would go in.
+	 */
+	private int slot(int flag) {
+		int slot = hash(flag) & mask;
+		while (indices[slot] != EMPTY && flags[slot] != flag) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Gets the flags in the order they are in the array.
+	 * 
+	 * @return the flags
+	 */
+	public int[] toArray() {
+		List<AmfValue> dense = array.getDense();
+		int[] result = new int[length];
+		for (int i = 0; i < length; ++i) {
+			result[i] = ((AmfInteger) dense.get(i)).getValue();
+		}
+		return result;
+	}
+}
@@ -22,9 +22,12 @@
 package org.csdgn.titsed.model;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.csdgn.amf3.AmfArray;
@@ -37,6 +40,7 @@ import org.csdgn.amf3.AmfString;
 import org.csdgn.amf3.AmfType;
 import org.csdgn.amf3.AmfUtils;
 import org.csdgn.amf3.AmfValue;
+import org.csdgn.amf3.PathIndex;
 
 /**
  * Save model for interfacing with the Amf Data.
@@ -44,8 +48,12 @@ import org.csdgn.amf3.AmfValue;
  * @author Robert Maupin
  */
 public class SaveModel {
+	private static final Set<String> SAVE_INFO_KEYS = new HashSet<String>(
+			Arrays.asList("saveName", "daysPassed", "currentHours", "currentMinutes"));
+
 	/**
-	 * Short method for getting only the amf file name and nothing else.
+	 * Short method for getting only the amf file name and nothing else. Only the
+	 * entries needed are read from the file, everything else is skipped.
 	 * 
 	 * @param file
 	 * @return
@@ -57,7 +65,7 @@ public class SaveModel {
 			int hours = 0;
 			int minutes = 0;
 
-			AmfFile amfFile = AmfIO.readFile(file);
+			AmfFile amfFile = AmfIO.readEntries(file, SAVE_INFO_KEYS);
 			AmfValue raw = AmfUtils.resolve(amfFile, "saveName");
 			if (raw.getType() == AmfType.String) {
 				name = ((AmfString) raw).getValue();
@@ -85,6 +93,9 @@ public class SaveModel {
 	public final boolean isFile;
 	public final AmfFile srcFile;
 	public final AmfValue srcValue;
+	private final Map<String, FlagSet> flagSets = new HashMap<String, FlagSet>();
+	private PathIndex index;
+	private final Map<String, AmfValue> nodes = new HashMap<String, AmfValue>();
 
 	/**
 	 * Constructs a save model from the given AmfFile.
@@ -115,10 +126,92 @@ public class SaveModel {
 	 * @return the amf value or null if it did not exist.
 	 */
 	public AmfValue find(String ident) {
+		AmfValue value = nodes.get(ident);
+		if (value != null) {
+			return value;
+		}
 		if (isFile) {
-			return AmfUtils.resolve(srcFile, ident);
+			value = AmfUtils.resolve(srcFile, ident);
+		} else {
+			value = AmfUtils.resolve(srcValue, ident);
+		}
+		if (value != null) {
+			nodes.put(ident, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Gets the index of every identity in the loaded model, which is built as it
+	 * is used and kept up to date by {@link #invalidate(String)}.
+	 * 
+	 * @return the index
+	 */
+	public PathIndex getIndex() {
+		if (index == null) {
+			index = isFile ? new PathIndex(srcFile) : new PathIndex(srcValue);
+		}
+		return index;
+	}
+
+	/**
+	 * Forgets the values found beneath the given identity, which must be called
+	 * after something is added to or removed from the array, dictionary or object
+	 * there. Values are otherwise remembered once found, so they can be changed
+	 * without resolving their identity again.
+	 * 
+	 * @param ident Identity of the changed value.
+	 */
+	public void invalidate(String ident) {
+		String prefix = ident + ".";
+		flagSets.keySet().removeIf(key -> key.equals(ident) || key.startsWith(prefix));
+		forget(ident);
+	}
+
+	/**
+	 * Forgets the values found beneath the given identity, but not the flags
+	 * there, after they were changed by way of their flag set.
+	 */
+	private void forget(String ident) {
+		String prefix = ident + ".";
+		nodes.keySet().removeIf(key -> key.startsWith(prefix));
+		if (index != null) {
+			index.invalidate(ident);
+		}
+	}
+
+	/**
+	 * Forgets the flag set of the array holding the value at the given identity,
+	 * after that value was changed in place, as the set only notices the array
+	 * changing size.
+	 * 
+	 * @param ident Identity of the changed value.
+	 */
+	private void changed(String ident) {
+		int index = ident.lastIndexOf('.');
+		if (index != -1) {
+			flagSets.remove(ident.substring(0, index));
+		}
+	}
+
+	/**
+	 * Replaces the specific value in the loaded model, such as a shared value that
+	 * cannot be changed.
+	 * 
+	 * @param ident Identity to resolve.
+	 * @param value the value to replace it with.
+	 */
+	private void replace(String ident, AmfValue value) {
+		boolean replaced;
+		if (isFile) {
+			replaced = AmfUtils.replace(srcFile, ident, value);
+		} else {
+			replaced = AmfUtils.replace(srcValue, ident, value);
+		}
+		if (replaced) {
+			nodes.put(ident, value);
+			invalidate(ident);
 		}
-		return AmfUtils.resolve(srcValue, ident);
 	}
 
 	public Integer getInteger(String ident) {
@@ -144,7 +237,12 @@ public class SaveModel {
 		if (raw.getType() == AmfType.Double) {
 			((AmfDouble) raw).setValue((double) value);
 		} else if (raw.getType() == AmfType.Integer) {
-			((AmfInteger) raw).setValue(value);
+			if (((AmfInteger) raw).isShared()) {
+				replace(ident, new AmfInteger(value));
+			} else {
+				((AmfInteger) raw).setValue(value);
+			}
+			changed(ident);
 		}
 	}
 
@@ -171,7 +269,12 @@ public class SaveModel {
 		if (raw.getType() == AmfType.Double) {
 			((AmfDouble) raw).setValue(value);
 		} else if (raw.getType() == AmfType.Integer) {
-			((AmfInteger) raw).setValue((int) value);
+			if (((AmfInteger) raw).isShared()) {
+				replace(ident, new AmfInteger((int) value));
+			} else {
+				((AmfInteger) raw).setValue((int) value);
+			}
+			changed(ident);
 		}
 	}
 
@@ -189,7 +292,11 @@ public class SaveModel {
 			return;
 		}
 		if (raw.getType() == AmfType.True || raw.getType() == AmfType.False) {
-			((AmfBoolean) raw).setValue(value);
+			if (((AmfBoolean) raw).isShared()) {
+				replace(ident, new AmfBoolean(value));
+			} else {
+				((AmfBoolean) raw).setValue(value);
+			}
 		}
 	}
 
@@ -214,28 +321,53 @@ public class SaveModel {
 		}
 	}
 
-	public Set<Integer> getFlags(String ident) {
+	/**
+	 * Gets the flags stored in the array of integers at the given identity. The
+	 * same set is returned until the array is changed by something other than the
+	 * set or this model. A flag changed in place without going through this model
+	 * is not noticed until {@link #invalidate(String)} is called for the array.
+	 * 
+	 * @param ident Identity to resolve.
+	 * @return the flags, or null if there is no array of integers there.
+	 */
+	public FlagSet getFlagSet(String ident) {
 		AmfValue raw = find(ident);
-		if (raw == null) {
-			return Collections.emptySet();
+		if (raw == null || raw.getType() != AmfType.Array) {
+			return null;
 		}
-		// should be an array of ints
-		// since these are flags, we store them in a set
-		if (raw.getType() == AmfType.Array) {
-			Set<Integer> data = new HashSet<Integer>();
-			for (AmfValue value : ((AmfArray) raw).getDense()) {
-				if (value instanceof AmfInteger) {
-					data.add(((AmfInteger) value).getValue());
-				} else {
-					return Collections.emptySet();
-				}
+		AmfArray arr = (AmfArray) raw;
+		FlagSet flags = flagSets.get(ident);
+		if (flags == null || !flags.isCurrent(arr)) {
+			flags = FlagSet.of(arr);
+			if (flags == null) {
+				flagSets.remove(ident);
+				return null;
 			}
-			return data;
+			flagSets.put(ident, flags);
+		}
+		return flags;
+	}
+
+	public Set<Integer> getFlags(String ident) {
+		FlagSet flags = getFlagSet(ident);
+		if (flags == null) {
+			return Collections.emptySet();
 		}
-		return Collections.emptySet();
+		Set<Integer> data = new HashSet<Integer>();
+		for (int flag : flags.toArray()) {
+			data.add(flag);
+		}
+		return data;
 	}
 
 	public void addFlag(String ident, Integer value) {
+		FlagSet flags = getFlagSet(ident);
+		if (flags != null) {
+			if (flags.add(value)) {
+				forget(ident);
+			}
+			return;
+		}
 		AmfValue raw = find(ident);
 		if (raw == null) {
 			return;
@@ -243,10 +375,18 @@ public class SaveModel {
 		if (raw.getType() == AmfType.Array) {
 			AmfArray arr = (AmfArray) raw;
 			arr.add(new AmfInteger(value));
+			invalidate(ident);
 		}
 	}
 
 	public void removeFlag(String ident, Integer value) {
+		FlagSet flags = getFlagSet(ident);
+		if (flags != null) {
+			if (flags.remove(value)) {
+				forget(ident);
+			}
+			return;
+		}
 		AmfValue raw = find(ident);
 		if (raw == null) {
 			return;
@@ -256,8 +396,9 @@ public class SaveModel {
 			// arr.add(new AmfInteger(value));
 			for (int index = 0; index < arr.getDenseSize(); ++index) {
 				AmfValue val = arr.get(index);
-				if (val instanceof AmfInteger && ((AmfInteger) val).getValue() == value) {
+				if (val instanceof AmfInteger && ((AmfInteger) val).getValue().equals(value)) {
 					arr.remove(index);
+					invalidate(ident);
 					break;
 				}
 			}
@@ -275,6 +416,7 @@ public class SaveModel {
 			for (Integer value : values) {
 				arr.add(new AmfInteger(value));
 			}
+			invalidate(ident);
 		}
 	}
 }
@@ -27,6 +27,7 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridLayout;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.List;
@@ -53,6 +54,7 @@ import org.csdgn.maru.swing.DocumentAdapter;
 import org.csdgn.maru.swing.NumberDocumentFilter;
 import org.csdgn.maru.swing.ToolTipRenderer;
 import org.csdgn.titsed.model.ControlEntry;
+import org.csdgn.titsed.model.FlagSet;
 import org.csdgn.titsed.model.ItemEntry;
 import org.csdgn.titsed.model.Sort;
 import org.csdgn.titsed.ui.MainFrame.EnumEntry;
@@ -125,6 +127,7 @@ public class ControlsFactory {
 		sub.addActionListener(e -> {
 			// remove this entry from the array and update
 			arr.getDense().remove(entry.arrayIndex);
+			state.save.invalidate(entry.value[0]);
 			if (entry.arrayIndex > 0) {
 				entry.arrayIndex = Math.max(entry.arrayIndex - 1, arraySize - 1);
 			}
@@ -170,6 +173,7 @@ public class ControlsFactory {
 			AmfObject obj = state.data.getStructMap().get("breast").createAmfObject();
 
 			arr.getDense().add(obj);
+			state.save.invalidate(entry.value[0]);
 			entry.arrayIndex = arr.getDenseSize() - 1;
 
 			tabUpdater.update();
@@ -190,6 +194,7 @@ public class ControlsFactory {
 			AmfObject obj = state.data.getStructMap().get("cock").createAmfObject();
 
 			arr.getDense().add(obj);
+			state.save.invalidate(entry.value[0]);
 			entry.arrayIndex = arr.getDenseSize() - 1;
 
 			tabUpdater.update();
@@ -214,6 +219,7 @@ public class ControlsFactory {
 			AmfUtils.setString(obj, "classInstance", item.id);
 
 			arr.getDense().add(obj);
+			state.save.invalidate(entry.value[0]);
 			entry.arrayIndex = arr.getDenseSize() - 1;
 
 			tabUpdater.update();
@@ -234,6 +240,7 @@ public class ControlsFactory {
 			AmfObject obj = state.data.getStructMap().get("vagina").createAmfObject();
 
 			arr.getDense().add(obj);
+			state.save.invalidate(entry.value[0]);
 			entry.arrayIndex = arr.getDenseSize() - 1;
 
 			tabUpdater.update();
@@ -367,15 +374,17 @@ public class ControlsFactory {
 
 		final String[] paths = getSaveIdents(entry.value);
 
-		Set<Integer> flagSet = new HashSet<Integer>();
+		List<FlagSet> flagSets = new ArrayList<FlagSet>();
 		for (String path : paths) {
-			flagSet.addAll(state.save.getFlags(path));
+			FlagSet flags = state.save.getFlagSet(path);
+			if (flags != null) {
+				flagSets.add(flags);
+			}
 		}
 
 		final Map<JCheckBox, Integer> boxMap = new IdentityHashMap<JCheckBox, Integer>();
 
-		// we will be depleting the set in case
-		// we have any unknown values that need display
+		Set<Integer> known = new HashSet<Integer>();
 		List<String> keys = Sort.sortIntegerKeySet(enumData, entry.sort);
 		for (String key : keys) {
 			String value = enumData.get(key);
@@ -385,23 +394,30 @@ public class ControlsFactory {
 			// for each id
 			JCheckBox box = new JCheckBox();
 			box.setText(ee.text);
-			if (flagSet.contains(nKey)) {
-				box.setSelected(true);
+			for (FlagSet flags : flagSets) {
+				if (flags.contains(nKey)) {
+					box.setSelected(true);
+					break;
+				}
 			}
-			flagSet.remove(nKey);
+			known.add(nKey);
 			boxMap.put(box, nKey);
 			panel.add(box);
 		}
 
 		// handle all unknown flags that are set
-		for (Integer unknownFlag : flagSet) {
-			JCheckBox box = new JCheckBox();
-			box.setText("Flag " + unknownFlag);
-			box.setSelected(true);
-			boxMap.put(box, unknownFlag);
-			panel.add(box);
+		for (FlagSet flags : flagSets) {
+			for (int unknownFlag : flags.toArray()) {
+				if (!known.add(unknownFlag)) {
+					continue;
+				}
+				JCheckBox box = new JCheckBox();
+				box.setText("Flag " + unknownFlag);
+				box.setSelected(true);
+				boxMap.put(box, unknownFlag);
+				panel.add(box);
+			}
 		}
-		flagSet.clear();
 
 		// setup callbacks
 		for (final JCheckBox box : boxMap.keySet()) {
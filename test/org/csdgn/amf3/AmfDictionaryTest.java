@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.amf3;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Tests that dictionaries keep apart keys the way ActionScript does, where
+ * objects, arrays, dictionaries and vectors are keys by identity.
+ * 
+ * @author Robert Maupin
+ *
+ */
+public class AmfDictionaryTest {
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		testEqualContainerKeys();
+		testEqualStringKeys();
+		testRoundTripEqualObjectKeys();
+		System.out.println("AmfDictionaryTest passed");
+	}
+
+	private static void testEqualContainerKeys() {
+		AmfDictionary dict = new AmfDictionary();
+		dict.put(new AmfObject(), new AmfInteger(1));
+		dict.put(new AmfObject(), new AmfInteger(2));
+		dict.put(new AmfArray(), new AmfInteger(3));
+		dict.put(new AmfArray(), new AmfInteger(4));
+		dict.put(new AmfDictionary(), new AmfInteger(5));
+		dict.put(new AmfDictionary(), new AmfInteger(6));
+		dict.put(new AmfVector.Integer(), new AmfInteger(7));
+		dict.put(new AmfVector.Integer(), new AmfInteger(8));
+		check(dict.size() == 8, "equal container keys were merged: " + dict.size());
+	}
+
+	private static void testEqualStringKeys() {
+		AmfDictionary dict = new AmfDictionary();
+		dict.put(new AmfString("key"), new AmfInteger(1));
+		dict.put(new AmfString("key"), new AmfInteger(2));
+		check(dict.size() == 1, "equal string keys were kept apart");
+		check(dict.get(new AmfString("key")).equals(new AmfInteger(2)), "string key not found by value");
+	}
+
+	private static void testRoundTripEqualObjectKeys() throws Exception {
+		AmfDictionary dict = new AmfDictionary();
+		AmfObject first = new AmfObject();
+		AmfObject second = new AmfObject();
+		check(first.equals(second), "empty objects should be equal");
+		dict.put(first, new AmfString("first"));
+		dict.put(second, new AmfString("second"));
+
+		AmfFile file = new AmfFile();
+		file.setName("dict");
+		file.put("dict", dict);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AmfIO.writeFile(file, out);
+
+		byte[] data = out.toByteArray();
+		AmfFile read = AmfIO.readFile(new ByteArrayInputStream(data));
+		AmfDictionary readDict = (AmfDictionary) read.get("dict");
+		check(readDict.size() == 2, "read dictionary lost a key: " + readDict);
+		int index = 0;
+		for (Map.Entry<AmfValue, AmfValue> e : readDict.entrySet()) {
+			check(e.getKey() instanceof AmfObject, "key is not an object: " + e.getKey());
+			String expected = index++ == 0 ? "first" : "second";
+			check(((AmfString) e.getValue()).getValue().equals(expected), "wrong value: " + e.getValue());
+		}
+
+		// writing what was read gives the same data back
+		out = new ByteArrayOutputStream();
+		AmfIO.writeFile(read, out);
+		check(Arrays.equals(data, out.toByteArray()), "rewritten dictionary differs");
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.amf3;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Tests reading and writing whole files with AmfIO.
+ * 
+ * @author Robert Maupin
+ *
+ */
+public class AmfIOTest {
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		testEqualValuesWrittenAsReferences();
+		testReadEntriesReferencesIntoReadEntry();
+		testReadEntriesReferencesIntoSkippedEntries();
+		testIncrementalWriteUnchanged();
+		testIncrementalWriteEdited();
+		testScanVectorValues();
+		System.out.println("AmfIOTest passed");
+	}
+
+	/**
+	 * Creates a file where the third entry refers to values of the second, which
+	 * in turn refers to the first.
+	 */
+	private static AmfFile crossReferences() {
+		AmfDictionary dict = new AmfDictionary();
+		dict.put(new AmfString("key"), new AmfString("value"));
+		AmfVector.Integer ints = new AmfVector.Integer();
+		ints.addInt(7);
+		AmfDate date = new AmfDate(1234.5);
+		AmfByteArray bytes = new AmfByteArray();
+		bytes.push(new byte[] { 1, 2, 3 });
+
+		AmfDictionary second = new AmfDictionary();
+		second.put(new AmfString("dict"), dict);
+		second.put(new AmfString("ints"), ints);
+		second.put(new AmfString("date"), date);
+		second.put(new AmfString("bytes"), bytes);
+		AmfDictionary third = new AmfDictionary();
+		third.put(new AmfString("bytes"), bytes);
+		third.put(new AmfString("date"), date);
+		third.put(new AmfString("ints"), ints);
+		third.put(new AmfString("dict"), dict);
+
+		AmfFile file = new AmfFile();
+		file.setName("cross");
+		file.put("first", dict);
+		file.put("second", second);
+		file.put("third", third);
+		return file;
+	}
+
+	private static void checkThird(AmfDictionary third) {
+		check(third != null && third.size() == 4, "third entry not read: " + third);
+		for (AmfValue value : third.values()) {
+			check(value != null, "skipped value read as null: " + third);
+		}
+		AmfByteArray bytes = (AmfByteArray) third.get(new AmfString("bytes"));
+		check(Arrays.equals(bytes.toArray(), new byte[] { 1, 2, 3 }), "wrong bytes: " + bytes);
+		AmfDate date = (AmfDate) third.get(new AmfString("date"));
+		check(date.getValue() == 1234.5, "wrong date: " + date);
+		AmfVector.Integer ints = (AmfVector.Integer) third.get(new AmfString("ints"));
+		check(ints.size() == 1 && ints.getInt(0) == 7, "wrong ints: " + ints);
+		AmfDictionary dict = (AmfDictionary) third.get(new AmfString("dict"));
+		check(dict.size() == 1 && dict.get(new AmfString("key")).equals(new AmfString("value")), "wrong dict: " + dict);
+	}
+
+	/**
+	 * Creates a file of nested objects and arrays that share strings and traits.
+	 */
+	private static AmfFile nested() {
+		AmfFile file = new AmfFile();
+		file.setName("nested");
+		for (int i = 0; i < 4; ++i) {
+			AmfObject entry = new AmfObject();
+			entry.setDynamic(true);
+			AmfArray list = new AmfArray();
+			for (int j = 0; j < 3; ++j) {
+				AmfObject item = new AmfObject();
+				item.setDynamic(true);
+				item.getDynamicMap().put("name", new AmfString("item" + j));
+				item.getDynamicMap().put("count", new AmfInteger(i * 10 + j));
+				list.add(item);
+			}
+			entry.getDynamicMap().put("name", new AmfString("entry" + i));
+			entry.getDynamicMap().put("items", list);
+			AmfVector.Integer ints = new AmfVector.Integer();
+			ints.addInt(i);
+			entry.getDynamicMap().put("ints", ints);
+			file.put("entry" + i, entry);
+		}
+		return file;
+	}
+
+	/**
+	 * Gets the dynamic value of the given name in the given object.
+	 */
+	private static AmfValue property(AmfValue object, String name) {
+		return ((AmfObject) object).getDynamicMap().get(name);
+	}
+
+	private static AmfFile read(byte[] data) throws IOException, UnexpectedDataException {
+		return AmfIO.readFile(new ByteArrayInputStream(data));
+	}
+
+	private static AmfFile readLazy(byte[] data) throws IOException, UnexpectedDataException {
+		return AmfIO.readFileLazy(new ByteArrayInputStream(data));
+	}
+
+	private static byte[] write(AmfFile file) throws IOException, UnexpectedDataException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AmfIO.writeFile(file, out);
+		return out.toByteArray();
+	}
+
+	private static byte[] writeIncremental(AmfFile file) throws IOException, UnexpectedDataException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AmfIO.writeFileIncremental(file, out);
+		return out.toByteArray();
+	}
+
+	private static void testEqualValuesWrittenAsReferences() throws Exception {
+		AmfFile file = new AmfFile();
+		file.setName("refs");
+		AmfVector.Integer first = new AmfVector.Integer();
+		first.addInt(1000);
+		AmfVector.Integer second = new AmfVector.Integer();
+		second.addInt(1000);
+		AmfByteArray bytes = new AmfByteArray();
+		bytes.push(new byte[] { 1, 2, 3 });
+		AmfByteArray sameBytes = new AmfByteArray();
+		sameBytes.push(new byte[] { 1, 2, 3 });
+		file.put("first", first);
+		file.put("second", second);
+		file.put("bytes", bytes);
+		file.put("sameBytes", sameBytes);
+
+		// equal values are written once, and read back as the same value
+		AmfFile read = read(write(file));
+		check(read.get("first") == read.get("second"), "equal vectors were not written as a reference");
+		check(read.get("bytes") == read.get("sameBytes"), "equal byte arrays were not written as a reference");
+		check(read.equals(file), "read file differs: " + read);
+	}
+
+	private static void testIncrementalWriteEdited() throws Exception {
+		byte[] data = write(nested());
+
+		// a changed value in a later entry, after which nothing can be copied
+		AmfFile lazy = readLazy(data);
+		AmfFile eager = read(data);
+		for (AmfFile file : Arrays.asList(lazy, eager)) {
+			AmfArray items = (AmfArray) property(file.get("entry2"), "items");
+			((AmfObject) items.get(1)).getDynamicMap().put("count", new AmfInteger(999));
+		}
+		check(Arrays.equals(writeIncremental(lazy), write(eager)), "edited value written differently");
+
+		// a new string in the first entry, which changes the string table for the rest
+		lazy = readLazy(data);
+		eager = read(data);
+		for (AmfFile file : Arrays.asList(lazy, eager)) {
+			((AmfObject) file.get("entry0")).getDynamicMap().put("added", new AmfString("new string"));
+		}
+		byte[] written = writeIncremental(lazy);
+		check(Arrays.equals(written, write(eager)), "added string written differently");
+		AmfFile reread = read(written);
+		check(property(reread.get("entry0"), "added").equals(new AmfString("new string")), "added string lost");
+		AmfArray items = (AmfArray) property(reread.get("entry3"), "items");
+		check(property(items.get(2), "name").equals(new AmfString("item2")), "later entry changed");
+
+		// a loaded but unchanged entry
+		lazy = readLazy(data);
+		((AmfObject) lazy.get("entry1")).getDynamicMap().size();
+		check(Arrays.equals(writeIncremental(lazy), data), "loaded entry written differently");
+	}
+
+	private static void testIncrementalWriteUnchanged() throws Exception {
+		byte[] data = write(nested());
+		check(Arrays.equals(write(read(data)), data), "rewritten file differs");
+		check(Arrays.equals(writeIncremental(readLazy(data)), data), "incremental write of an unchanged file differs");
+	}
+
+	private static void testScanVectorValues() throws Exception {
+		AmfVector.Integer ints = new AmfVector.Integer();
+		ints.addInt(-1);
+		ints.addInt(1000);
+		AmfVector.UnsignedInteger uints = new AmfVector.UnsignedInteger();
+		uints.addInt(-1);
+		AmfVector.Double doubles = new AmfVector.Double();
+		doubles.addDouble(2.5);
+		AmfFile file = new AmfFile();
+		file.setName("scan");
+		file.put("ints", ints);
+		file.put("uints", uints);
+		file.put("doubles", doubles);
+		byte[] data = write(file);
+
+		final List<Object> primitives = new ArrayList<Object>();
+		AmfIO.scanFile(new ByteArrayInputStream(data), new AmfHandlerAdapter() {
+			@Override
+			public void doubleValue(double value) {
+				primitives.add(value);
+			}
+
+			@Override
+			public void intValue(int value) {
+				primitives.add(value);
+			}
+
+			@Override
+			public void unsignedIntValue(long value) {
+				primitives.add(value);
+			}
+
+			@Override
+			public void value(AmfValue value) {
+				primitives.add(value);
+			}
+		});
+		check(primitives.equals(Arrays.<Object>asList(-1, 1000, 0xFFFFFFFFL, 2.5)), "wrong primitives: " + primitives);
+
+		// a handler of only values still gets the values of vectors
+		final List<AmfValue> values = new ArrayList<AmfValue>();
+		AmfIO.scanFile(new ByteArrayInputStream(data), new AmfHandlerAdapter() {
+			@Override
+			public void value(AmfValue value) {
+				values.add(value);
+			}
+		});
+		check(values.size() == 4, "wrong values: " + values);
+		check(((AmfInteger) values.get(1)).getValue() == 1000, "wrong int: " + values.get(1));
+		check(((AmfInteger) values.get(2)).getUnsignedValue() == 0xFFFFFFFFL, "wrong unsigned int: " + values.get(2));
+		check(((AmfDouble) values.get(3)).getValue() == 2.5, "wrong double: " + values.get(3));
+	}
+
+	private static void testReadEntriesReferencesIntoReadEntry() throws Exception {
+		byte[] data = write(crossReferences());
+		AmfFile read = AmfIO.readEntries(new ByteArrayInputStream(data),
+				new HashSet<String>(Arrays.asList("second", "third")));
+		check(read.size() == 2, "wrong entries read: " + read.keySet());
+		AmfDictionary second = (AmfDictionary) read.get("second");
+		AmfDictionary third = (AmfDictionary) read.get("third");
+		checkThird(third);
+		for (AmfValue key : third.keySet()) {
+			check(third.get(key) == second.get(key), "reference not shared: " + key);
+		}
+	}
+
+	private static void testReadEntriesReferencesIntoSkippedEntries() throws Exception {
+		byte[] data = write(crossReferences());
+		AmfFile read = AmfIO.readEntries(new ByteArrayInputStream(data), Collections.singleton("third"));
+		check(read.size() == 1, "wrong entries read: " + read.keySet());
+		AmfDictionary third = (AmfDictionary) read.get("third");
+		checkThird(third);
+	}
+}
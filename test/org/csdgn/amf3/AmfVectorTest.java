@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.amf3;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests that the numeric vectors behave as lists whose elements are views of
+ * the values in the vector.
+ * 
+ * @author Robert Maupin
+ *
+ */
+public class AmfVectorTest {
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		testArrayList();
+		testElementEquals();
+		testListOperations();
+		testStaleElement();
+		testWriteThrough();
+		System.out.println("AmfVectorTest passed");
+	}
+
+	private static void testArrayList() {
+		Object vec = new AmfVector.Integer();
+		check(vec instanceof ArrayList, "int vector is not an ArrayList");
+		vec = new AmfVector.Double();
+		check(vec instanceof ArrayList, "double vector is not an ArrayList");
+		vec = new AmfVector.Generic();
+		check(vec instanceof ArrayList, "generic vector is not an ArrayList");
+	}
+
+	private static void testElementEquals() {
+		AmfVector.Integer ints = new AmfVector.Integer();
+		ints.addInt(1000);
+		AmfInteger e = ints.get(0);
+		check(e.equals(e), "element does not equal itself");
+		check(e.equals(new AmfInteger(1000)), "element does not equal its value");
+		check(e.hashCode() == new AmfInteger(1000).hashCode(), "element hash differs from its value");
+		check(ints.contains(new AmfInteger(1000)), "vector does not contain its value");
+	}
+
+	private static void testListOperations() {
+		AmfVector.Integer ints = new AmfVector.Integer();
+		for (int i = 0; i < 10; ++i) {
+			ints.add(new AmfInteger(i));
+		}
+		ints.removeIf(v -> v.getValue() % 2 == 0);
+		check(ints.size() == 5 && ints.getInt(0) == 1 && ints.getInt(4) == 9, "removeIf: " + ints);
+
+		Iterator<AmfInteger> it = ints.iterator();
+		it.next();
+		it.remove();
+		check(ints.size() == 4 && ints.getInt(0) == 3, "iterator remove: " + ints);
+
+		List<AmfInteger> sub = ints.subList(1, 3);
+		sub.get(0).setValue(50);
+		sub.clear();
+		check(ints.size() == 2 && ints.getInt(0) == 3 && ints.getInt(1) == 9, "subList: " + ints);
+
+		ints.addAll(0, ints);
+		check(ints.size() == 4 && ints.getInt(1) == 9 && ints.getInt(2) == 3, "addAll self: " + ints);
+
+		ints.sort((a, b) -> b.getValue() - a.getValue());
+		check(ints.getInt(0) == 9 && ints.getInt(3) == 3, "sort: " + ints);
+
+		AmfVector.Integer copy = (AmfVector.Integer) ints.clone();
+		copy.setInt(0, -1);
+		check(ints.getInt(0) == 9, "clone shares the values");
+	}
+
+	private static void testStaleElement() {
+		AmfVector.Double doubles = new AmfVector.Double();
+		doubles.addDouble(1.5);
+		doubles.addDouble(2.5);
+		AmfDouble e = doubles.get(1);
+		doubles.remove(0);
+		try {
+			e.getValue();
+			check(false, "stale element was read");
+		} catch (ConcurrentModificationException ex) {
+			// expected
+		}
+		try {
+			e.setValue(3.5);
+			check(false, "stale element was written");
+		} catch (ConcurrentModificationException ex) {
+			// expected
+		}
+		check(doubles.size() == 1 && doubles.getDouble(0) == 2.5, "stale element changed the vector");
+	}
+
+	private static void testWriteThrough() {
+		AmfVector.Integer ints = new AmfVector.Integer();
+		ints.addInt(1);
+		ints.addInt(2);
+		ints.get(0).setValue(5);
+		check(ints.getInt(0) == 5, "int element did not write through");
+		for (AmfInteger e : ints) {
+			e.setValue(e.getValue() * 10);
+		}
+		check(ints.getInt(0) == 50 && ints.getInt(1) == 20, "iterated elements did not write through");
+
+		AmfVector.UnsignedInteger uints = new AmfVector.UnsignedInteger();
+		uints.addInt(0);
+		uints.get(0).setUnsignedValue(0xFFFFFFFFL);
+		check(uints.getUnsignedInt(0) == 0xFFFFFFFFL, "unsigned element did not write through");
+
+		AmfVector.Double doubles = new AmfVector.Double();
+		doubles.addDouble(1.0);
+		AmfDouble e = doubles.get(0);
+		e.setValue(2.5);
+		check(doubles.getDouble(0) == 2.5, "double element did not write through");
+		doubles.setDouble(0, 4.0);
+		check(e.getValue() == 4.0, "double element did not read through");
+	}
+}
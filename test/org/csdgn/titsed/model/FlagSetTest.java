@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2017-2020 Robert Maupin
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.csdgn.titsed.model;
+
+import java.util.Arrays;
+
+import org.csdgn.amf3.AmfArray;
+import org.csdgn.amf3.AmfInteger;
+
+/**
+ * Tests that a flag set changes its array the same as changing it by hand.
+ * 
+ * @author Robert Maupin
+ *
+ */
+public class FlagSetTest {
+	private static AmfArray array(int... flags) {
+		AmfArray array = new AmfArray();
+		for (int flag : flags) {
+			array.add(new AmfInteger(flag));
+		}
+		return array;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	public static void main(String[] args) {
+		testRemoveDuplicate();
+		testRemoveKeepsOrder();
+		System.out.println("FlagSetTest passed");
+	}
+
+	private static void testRemoveDuplicate() {
+		FlagSet set = FlagSet.of(array(4, 1000, 5, 1000, 6));
+		check(set.remove(1000), "flag not removed");
+		check(Arrays.equals(set.toArray(), new int[] { 4, 5, 1000, 6 }), "wrong flags: " + Arrays.toString(set.toArray()));
+		check(set.contains(1000), "the second copy of the flag was removed");
+		check(set.remove(1000) && !set.contains(1000), "second copy not removed");
+		check(Arrays.equals(set.toArray(), new int[] { 4, 5, 6 }), "wrong flags: " + Arrays.toString(set.toArray()));
+	}
+
+	private static void testRemoveKeepsOrder() {
+		AmfArray array = array(1, 2, 3, 4, 5);
+		FlagSet set = FlagSet.of(array);
+		check(set.remove(2), "flag not removed");
+		check(!set.remove(2), "flag removed twice");
+		check(Arrays.equals(set.toArray(), new int[] { 1, 3, 4, 5 }), "wrong flags: " + Arrays.toString(set.toArray()));
+		check(array.getDenseSize() == 4 && set.isCurrent(array), "array and set differ");
+		check(set.remove(5) && set.remove(1), "flags not removed");
+		check(set.add(7), "flag not added");
+		check(Arrays.equals(set.toArray(), new int[] { 3, 4, 7 }), "wrong flags: " + Arrays.toString(set.toArray()));
+		for (int flag : new int[] { 3, 4, 7 }) {
+			check(set.contains(flag), "flag lost: " + flag);
+		}
+		check(set.size() == 3, "wrong size: " + set.size());
+	}
+}